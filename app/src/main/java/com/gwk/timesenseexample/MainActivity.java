@@ -17,7 +17,7 @@ import android.widget.TimePicker;
 
 import com.gwk.timesense.TimeSense;
 import com.gwk.timesense.configuration.TSConfiguration;
-import com.gwk.timesense.listener.TSListener;
+import com.gwk.timesense.listener.TSIndexedListener;
 import com.gwk.timesense.rule.TSRule;
 
 import java.text.SimpleDateFormat;
@@ -25,10 +25,12 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 
-public class MainActivity extends AppCompatActivity implements TSListener {
+public class MainActivity extends AppCompatActivity implements TSIndexedListener {
 
     private static final String CUSTOM_RULE = "CUSTOM_RULE";
     private Calendar calendar;
+    private TextView[] ruleLabels;
+    private int customRuleId;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,6 +54,15 @@ public class MainActivity extends AppCompatActivity implements TSListener {
         TimeSense.getInstance().addListener(TSRule.TS_RULE_NAME_EVENING, this);
         TimeSense.getInstance().addListener(TSRule.TS_RULE_NAME_NIGHT, this);
 
+        TSConfiguration configuration = TimeSense.getInstance().getConfiguration();
+        this.ruleLabels = new TextView[configuration.getRules().size()];
+        this.ruleLabels[configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_MORNING))] = (TextView) findViewById(R.id.labelMorning);
+        this.ruleLabels[configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_AFTERNOON))] = (TextView) findViewById(R.id.labelAfternoon);
+        this.ruleLabels[configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_EVENING))] = (TextView) findViewById(R.id.labelEvening);
+        this.ruleLabels[configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_NIGHT))] = (TextView) findViewById(R.id.labelNight);
+        this.customRuleId = configuration.getRuleId(configuration.findRule(CUSTOM_RULE));
+        this.ruleLabels[this.customRuleId] = (TextView) findViewById(R.id.labelCustom);
+
         this.calendar = Calendar.getInstance();
         updateLabel();
         final TimePickerDialog.OnTimeSetListener timeListener = new TimePickerDialog.OnTimeSetListener() {
@@ -127,22 +138,14 @@ public class MainActivity extends AppCompatActivity implements TSListener {
 
     @Override
     public void timeSenseTriggered(String ruleName) {
-        TextView labelMorning = (TextView) findViewById(R.id.labelMorning);
-        TextView labelAfternoon = (TextView) findViewById(R.id.labelAfternoon);
-        TextView labelEvening = (TextView) findViewById(R.id.labelEvening);
-        TextView labelNight = (TextView) findViewById(R.id.labelNight);
-        TextView labelCustom = (TextView) findViewById(R.id.labelCustom);
-
-        if (ruleName.equals(TSRule.TS_RULE_NAME_MORNING)) {
-            labelMorning.setTextColor(Color.GREEN);
-        } else if (ruleName.equals(TSRule.TS_RULE_NAME_AFTERNOON)) {
-            labelAfternoon.setTextColor(Color.GREEN);
-        } else if (ruleName.equals(TSRule.TS_RULE_NAME_EVENING)) {
-            labelEvening.setTextColor(Color.GREEN);
-        } else if (ruleName.equals(TSRule.TS_RULE_NAME_NIGHT)) {
-            labelNight.setTextColor(Color.GREEN);
-        } else if (ruleName.equals(CUSTOM_RULE)) {
-            labelCustom.setTextColor(Color.GREEN);
+        TSConfiguration configuration = TimeSense.getInstance().getConfiguration();
+        this.timeSenseTriggered(configuration.getRuleId(configuration.findRule(ruleName)));
+    }
+
+    @Override
+    public void timeSenseTriggered(int ruleId) {
+        this.ruleLabels[ruleId].setTextColor(Color.GREEN);
+        if (ruleId == this.customRuleId) {
             new AlertDialog.Builder(MainActivity.this).setMessage("Custom rule triggered").setPositiveButton("OK", new DialogInterface.OnClickListener() {
                 public void onClick(DialogInterface dialog, int which) {
                 }
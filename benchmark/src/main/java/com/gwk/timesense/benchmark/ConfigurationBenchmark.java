@@ -0,0 +1,55 @@
+package com.gwk.timesense.benchmark;
+
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.rule.TSRule;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmark for TSConfiguration.addRule, building a configuration rule by rule.
+ * Score is time to add every rule of the rule set, divide by ruleCount for time per rule.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationBenchmark {
+
+    @Param({"4", "100", "10000", "100000"})
+    public int ruleCount;
+
+    private TSRule[] rules;
+
+    @Setup
+    public void setUp() {
+        ArrayList<TSRule> rules = RuleSets.rules(this.ruleCount);
+        this.rules = rules.toArray(new TSRule[rules.size()]);
+    }
+
+    @Benchmark
+    public TSConfiguration addRule() {
+        TSConfiguration configuration = new TSConfiguration();
+        for (TSRule rule: this.rules) {
+            configuration.addRule(rule);
+        }
+        return configuration;
+    }
+}
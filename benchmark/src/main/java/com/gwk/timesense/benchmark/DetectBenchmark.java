@@ -0,0 +1,79 @@
+package com.gwk.timesense.benchmark;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.index.TSBatchResult;
+import com.gwk.timesense.rule.TSRule;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmark for TimeSense.detect, for one time and for a batch of times, and TimeSense.count for a batch.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+
+    @Param({"4", "100", "10000", "100000"})
+    public int ruleCount;
+
+    private TimeSense timeSense;
+    private Date[] dates;
+    private long[] times;
+    private TSBatchResult result;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        this.timeSense = new TimeSense(RuleSets.configuration(this.ruleCount));
+        this.times = RuleSets.times(BATCH_SIZE);
+        this.dates = new Date[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            this.dates[i] = new Date(this.times[i]);
+        }
+        this.result = new TSBatchResult(BATCH_SIZE, this.ruleCount);
+        this.timeSense.getIndex();
+    }
+
+    @Benchmark
+    public ArrayList<TSRule> detect() {
+        this.next = (this.next + 1) & (BATCH_SIZE - 1);
+        return this.timeSense.detect(this.dates[this.next]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public TSBatchResult detectBatch() {
+        this.timeSense.detect(this.times, this.result);
+        return this.result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long[] countBatch() {
+        return this.timeSense.count(this.times);
+    }
+}
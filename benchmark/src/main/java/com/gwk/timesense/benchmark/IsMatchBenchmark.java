@@ -0,0 +1,70 @@
+package com.gwk.timesense.benchmark;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.rule.TSRule;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmark for TimeSense.isMatch, checking every rule of the rule set against one time.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsMatchBenchmark {
+
+    @Param({"4", "100", "10000", "100000"})
+    public int ruleCount;
+
+    private TimeSense timeSense;
+    private TSRule[] rules;
+    private Date time;
+    private long epochMillis;
+
+    @Setup
+    public void setUp() {
+        this.timeSense = new TimeSense(RuleSets.configuration(this.ruleCount));
+        ArrayList<TSRule> rules = this.timeSense.getConfiguration().getRules();
+        this.rules = rules.toArray(new TSRule[rules.size()]);
+        this.epochMillis = RuleSets.times(7)[3];
+        this.time = new Date(this.epochMillis);
+    }
+
+    @Benchmark
+    public int isMatchDate() {
+        int count = 0;
+        for (TSRule rule: this.rules) {
+            if (this.timeSense.isMatch(rule, this.time)) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int isMatchEpochMillis() {
+        int count = 0;
+        for (TSRule rule: this.rules) {
+            if (this.timeSense.isMatch(rule, this.epochMillis)) count++;
+        }
+        return count;
+    }
+}
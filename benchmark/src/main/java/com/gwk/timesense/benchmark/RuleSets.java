@@ -0,0 +1,79 @@
+package com.gwk.timesense.benchmark;
+
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.rule.TSRule;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+
+/***
+ * Generated rule sets used by benchmarks.
+ * Rules are spread over the whole day with varying length, some of them crossing midnight,
+ * and generation is deterministic so results are comparable between runs.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class RuleSets {
+
+    /***
+     * Generate rules
+     *
+     * @param ruleCount Number of rules
+     * @return ArrayList<TSRule> Rules with unique name
+     */
+    public static ArrayList<TSRule> rules(int ruleCount) {
+        ArrayList<TSRule> rules = new ArrayList<TSRule>(ruleCount);
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        for (int i = 0; i < ruleCount; i++) {
+            int start = (int) ((i * 7919L) % 1440);
+            int end = (start + 1 + (int) ((i * 31L) % 600)) % 1440;
+
+            calendar.set(Calendar.HOUR_OF_DAY, start / 60);
+            calendar.set(Calendar.MINUTE, start % 60);
+            TSRule rule = new TSRule("RULE_" + i, calendar.getTime(), null);
+            calendar.set(Calendar.HOUR_OF_DAY, end / 60);
+            calendar.set(Calendar.MINUTE, end % 60);
+            rule.setEndTime(calendar.getTime());
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    /***
+     * Generate configuration, using default configuration for four rules
+     *
+     * @param ruleCount Number of rules
+     * @return TSConfiguration
+     */
+    public static TSConfiguration configuration(int ruleCount) {
+        if (ruleCount == 4) return TSConfiguration.defaultConfiguration();
+        TSConfiguration configuration = new TSConfiguration();
+        configuration.addRules(rules(ruleCount));
+        return configuration;
+    }
+
+    /***
+     * Generate event times, one every few minutes over two days starting at midnight
+     *
+     * @param count Number of times
+     * @return long[] Epoch milliseconds
+     */
+    public static long[] times(int count) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long start = calendar.getTimeInMillis();
+        long step = 2 * 24 * 60 * 60 * 1000L / count;
+
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = start + i * step;
+        }
+        return times;
+    }
+}
@@ -0,0 +1,85 @@
+package com.gwk.timesense.benchmark;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.listener.TSListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmark for TimeSense.trigger, with listeners spread over rule names.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TriggerBenchmark {
+
+    private static final int TIME_COUNT = 1024;
+
+    @Param({"4", "100", "10000", "100000"})
+    public int ruleCount;
+
+    @Param({"0", "1", "100", "1000"})
+    public int listenerCount;
+
+    private TimeSense timeSense;
+    private Date[] dates;
+    private int next;
+    private int calls;
+
+    @Setup
+    public void setUp() {
+        this.timeSense = new TimeSense(RuleSets.configuration(this.ruleCount));
+        TSListener listener = new TSListener() {
+            @Override
+            public void timeSenseTriggered() {
+                calls++;
+            }
+
+            @Override
+            public void timeSenseTriggered(String ruleName) {
+                calls++;
+            }
+        };
+        for (int i = 0; i < this.listenerCount; i++) {
+            // First listener listens to all rules, others to one rule each
+            if (i == 0) {
+                this.timeSense.addListener(listener);
+            } else {
+                this.timeSense.addListener(this.timeSense.getConfiguration().getRules().get(i % this.ruleCount).getName(), listener);
+            }
+        }
+
+        long[] times = RuleSets.times(TIME_COUNT);
+        this.dates = new Date[TIME_COUNT];
+        for (int i = 0; i < TIME_COUNT; i++) {
+            this.dates[i] = new Date(times[i]);
+        }
+        this.timeSense.getIndex();
+    }
+
+    @Benchmark
+    public int trigger() {
+        this.next = (this.next + 1) & (TIME_COUNT - 1);
+        this.timeSense.trigger(this.dates[this.next]);
+        return this.calls;
+    }
+}
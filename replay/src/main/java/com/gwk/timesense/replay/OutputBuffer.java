@@ -0,0 +1,95 @@
+package com.gwk.timesense.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/***
+ * Growable byte buffer holding the output of one chunk until it is written in order.
+ * Numbers are written as digits directly, without creating strings.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+class OutputBuffer {
+
+    private final byte[] digits = new byte[20];
+    private ByteBuffer buffer;
+
+    /***
+     * Constructor.
+     *
+     * @param capacity Initial capacity in bytes
+     */
+    OutputBuffer(int capacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(capacity, 64));
+    }
+
+    /***
+     * @param value Long to be written as 8 big endian bytes
+     */
+    void putLong(long value) {
+        this.ensure(8);
+        this.buffer.putLong(value);
+    }
+
+    /***
+     * @param value Int to be written as 4 big endian bytes
+     */
+    void putInt(int value) {
+        this.ensure(4);
+        this.buffer.putInt(value);
+    }
+
+    /***
+     * @param value ASCII character to be written
+     */
+    void putChar(char value) {
+        this.ensure(1);
+        this.buffer.put((byte) value);
+    }
+
+    /***
+     * @param value Number to be written as decimal digits
+     */
+    void putDecimal(long value) {
+        this.ensure(21);
+        if (value < 0) {
+            this.buffer.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                this.buffer.put("9223372036854775808".getBytes());
+                return;
+            }
+            value = -value;
+        }
+        int length = 0;
+        do {
+            this.digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (length > 0) this.buffer.put(this.digits[--length]);
+    }
+
+    /***
+     * Write content to channel
+     *
+     * @param channel Channel to write to
+     * @throws IOException if channel fails
+     */
+    void writeTo(WritableByteChannel channel) throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) channel.write(this.buffer);
+    }
+
+    /***
+     * Helper method to grow buffer
+     * @param size bytes about to be written
+     */
+    private void ensure(int size) {
+        if (this.buffer.remaining() >= size) return;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2, this.buffer.position() + size));
+        this.buffer.flip();
+        grown.put(this.buffer);
+        this.buffer = grown;
+    }
+}
@@ -0,0 +1,138 @@
+package com.gwk.timesense.replay;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.io.TSConfigurationFile;
+import com.gwk.timesense.io.TSRuleFileLoader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/***
+ * Command line tool classifying recorded timestamps against a rule configuration, see ReplayJob for file formats.
+ * <pre>
+ * replay (--rules rules.txt | --config rules.tscf) --input events --output result
+ *        [--input-format binary|text] [--output-format binary|text] [--mode ids|transitions]
+ *        [--timezone id] [--threads n] [--chunk-mb n]
+ * </pre>
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class Replay {
+
+    private static final String USAGE = "Usage: replay (--rules rules.txt | --config rules.tscf) --input events --output result\n"
+            + "              [--input-format binary|text] [--output-format binary|text] [--mode ids|transitions]\n"
+            + "              [--timezone id] [--threads n] [--chunk-mb n]";
+
+    /***
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        try {
+            HashMap<String, String> options = parseOptions(args);
+            long start = System.nanoTime();
+            long records = run(options);
+            System.err.println("Replayed " + records + " records in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Replay failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /***
+     * Run replay with parsed options
+     *
+     * @param options Option values by name, without leading dashes
+     * @return long Number of input records
+     * @throws IOException if a file cannot be read or written, or input is invalid
+     */
+    public static long run(HashMap<String, String> options) throws IOException {
+        String input = required(options, "input");
+        String output = required(options, "output");
+        ReplayJob.Format inputFormat = ReplayJob.Format.valueOf(option(options, "input-format", "binary").toUpperCase(Locale.US));
+        ReplayJob.Format outputFormat = ReplayJob.Format.valueOf(option(options, "output-format", "text").toUpperCase(Locale.US));
+        ReplayJob.Mode mode = ReplayJob.Mode.valueOf(option(options, "mode", "ids").toUpperCase(Locale.US));
+        int threads = Integer.parseInt(option(options, "threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        int chunkBytes = Integer.parseInt(option(options, "chunk-mb", Integer.toString(ReplayJob.DEFAULT_CHUNK_BYTES >> 20))) << 20;
+        if (threads <= 0 || chunkBytes <= 0) throw new IllegalArgumentException("Threads and chunk size should be positive");
+
+        TimeSense timeSense = new TimeSense();
+        if (options.containsKey("timezone")) timeSense.setTimeZone(TimeZone.getTimeZone(options.get("timezone")));
+        if (options.containsKey("config")) {
+            TSConfigurationFile file = TSConfigurationFile.read(new File(options.get("config")));
+            if (file.getIndex() != null && !options.containsKey("timezone")) {
+                timeSense.setConfiguration(file.getConfiguration(), file.getIndex());
+            } else {
+                timeSense.setConfiguration(file.getConfiguration());
+            }
+        } else {
+            timeSense.setConfiguration(TSRuleFileLoader.load(new File(required(options, "rules")), timeSense.getTimeZone()));
+        }
+
+        ReplayJob job = new ReplayJob(timeSense.getIndex(), inputFormat, outputFormat, mode, chunkBytes);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        FileChannel inputChannel = new FileInputStream(input).getChannel();
+        try {
+            FileChannel outputChannel = new FileOutputStream(output).getChannel();
+            try {
+                return job.run(inputChannel, outputChannel, executor, threads * 2);
+            } finally {
+                outputChannel.close();
+            }
+        } finally {
+            inputChannel.close();
+            executor.shutdownNow();
+        }
+    }
+
+    /***
+     * Parse --name value pairs
+     *
+     * @param args Command line arguments
+     * @return HashMap<String, String> Option values by name, without leading dashes
+     */
+    public static HashMap<String, String> parseOptions(String[] args) {
+        HashMap<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) throw new IllegalArgumentException("Invalid option " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /***
+     * Helper method to get option that should be set
+     * @param options parsed options
+     * @param name option name
+     * @return option value
+     */
+    private static String required(HashMap<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing option --" + name);
+        return value;
+    }
+
+    /***
+     * Helper method to get option with default value
+     * @param options parsed options
+     * @param name option name
+     * @param defaultValue value if option is not set
+     * @return option value
+     */
+    private static String option(HashMap<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,373 @@
+package com.gwk.timesense.replay;
+
+import com.gwk.timesense.index.TSRuleIndex;
+import com.gwk.timesense.index.TSStreamClassifier;
+import com.gwk.timesense.listener.TSTransitionListener;
+import com.gwk.timesense.rule.TSRule;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/***
+ * Classify every timestamp of an input file against a rule index and write the result to an output channel.
+ * Input is cut into chunks of whole records, each chunk is memory mapped and classified on executor,
+ * and chunk outputs are written in input order, with a bounded number of chunks in flight.
+ * Timestamps are read as primitive longs and classified with TSRuleIndex and TSStreamClassifier, no Date is created.
+ *
+ * Binary records are big endian epoch milliseconds (8 bytes), text records are decimal epoch milliseconds, one per line.
+ * Output of IDS mode is one record per input record: time and matching rule ids (text, "time\tid,id")
+ * or rule id bitset of TSRuleIndex.getWords() longs (binary).
+ * Output of TRANSITIONS mode is one record per rule entered or exited, input should be time ordered:
+ * time and signed rule id (text, "time\t+id" or "time\t-id"), or time, rule id, and 1 for entered or 0 for exited (binary, 16 bytes).
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class ReplayJob {
+
+    public static final int DEFAULT_CHUNK_BYTES = 32 * 1024 * 1024;
+
+    /***
+     * Encoding of input and output records.
+     */
+    public enum Format {
+        /***
+         * Big endian fixed size records.
+         */
+        BINARY,
+        /***
+         * Decimal text, one record per line.
+         */
+        TEXT
+    }
+
+    /***
+     * What is written for input records.
+     */
+    public enum Mode {
+        /***
+         * Matching rule ids of every record.
+         */
+        IDS,
+        /***
+         * Rules entered and exited between consecutive records.
+         */
+        TRANSITIONS
+    }
+
+    private final TSRuleIndex index;
+    private final Format inputFormat;
+    private final Format outputFormat;
+    private final Mode mode;
+    private final int chunkBytes;
+
+    /***
+     * Constructor.
+     *
+     * @param index Rule index used to classify timestamps
+     * @param inputFormat Encoding of input records
+     * @param outputFormat Encoding of output records
+     * @param mode What is written for input records
+     * @param chunkBytes Input bytes classified by one task
+     */
+    public ReplayJob(TSRuleIndex index, Format inputFormat, Format outputFormat, Mode mode, int chunkBytes) {
+        if (chunkBytes < 8) throw new IllegalArgumentException("Chunk should be at least 8 bytes");
+        this.index = index;
+        this.inputFormat = inputFormat;
+        this.outputFormat = outputFormat;
+        this.mode = mode;
+        this.chunkBytes = chunkBytes & ~7;
+    }
+
+    /***
+     * Classify whole input and write result to output
+     *
+     * @param input Input file channel
+     * @param output Output channel
+     * @param executor Executor classifying chunks
+     * @param parallelism Maximum chunks classified or waiting to be written at once
+     * @return long Number of input records
+     * @throws IOException if input is invalid or a channel fails
+     */
+    public long run(final FileChannel input, WritableByteChannel output, ExecutorService executor, int parallelism) throws IOException {
+        long size = input.size();
+        if (this.inputFormat == Format.BINARY && size % 8 != 0) throw new IOException("Binary input size should be a multiple of 8 bytes");
+
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+        long records = 0;
+        try {
+            long start = 0;
+            while (start < size || !pending.isEmpty()) {
+                if (start < size && pending.size() < parallelism) {
+                    final long chunkStart = start;
+                    final long chunkEnd = this.chunkEnd(input, start, size);
+                    pending.addLast(executor.submit(new Callable<Chunk>() {
+                        @Override
+                        public Chunk call() throws IOException {
+                            return ReplayJob.this.classify(input, chunkStart, chunkEnd);
+                        }
+                    }));
+                    start = chunkEnd;
+                    continue;
+                }
+                Chunk chunk = await(pending.removeFirst());
+                chunk.output.writeTo(output);
+                records += chunk.records;
+            }
+        } finally {
+            for (Future<Chunk> future: pending) future.cancel(true);
+        }
+        return records;
+    }
+
+    /***
+     * Classify one chunk of input
+     *
+     * @param input Input file channel
+     * @param start First byte of chunk, start of a record
+     * @param end Last byte of chunk (excluded), end of a record
+     * @return Chunk with output and record count
+     * @throws IOException if input is invalid or cannot be read
+     */
+    Chunk classify(FileChannel input, long start, long end) throws IOException {
+        MappedByteBuffer buffer = input.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        OutputBuffer output = new OutputBuffer((int) Math.min(end - start, DEFAULT_CHUNK_BYTES));
+        Reader reader = new Reader(buffer, start);
+
+        long records = 0;
+        if (this.mode == Mode.IDS) {
+            long[] bits = new long[this.index.getWords()];
+            while (reader.next()) {
+                this.index.detect(reader.time, bits, 0);
+                this.writeIds(output, reader.time, bits);
+                records++;
+            }
+        } else {
+            TransitionWriter writer = new TransitionWriter(output);
+            TSStreamClassifier classifier = new TSStreamClassifier(this.index, writer);
+            Long previous = start > 0 ? this.previousTime(input, start) : null;
+            if (previous != null) classifier.accept(previous);
+            writer.enabled = true;
+            while (reader.next()) {
+                classifier.accept(reader.time);
+                records++;
+            }
+        }
+        return new Chunk(output, records);
+    }
+
+    /***
+     * Helper method to find end of chunk starting at start, at a record boundary
+     * @param input input file channel
+     * @param start chunk start
+     * @param size input size
+     * @return chunk end
+     * @throws IOException if input cannot be read
+     */
+    private long chunkEnd(FileChannel input, long start, long size) throws IOException {
+        long end = Math.min(start + this.chunkBytes, size);
+        if (this.inputFormat == Format.BINARY || end == size) return end;
+
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        while (end < size) {
+            window.clear();
+            int read = input.read(window, end);
+            if (read <= 0) return size;
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') return end + i + 1;
+            }
+            end += read;
+        }
+        return size;
+    }
+
+    /***
+     * Helper method to read record just before position, used to restore rule state at chunk start
+     * @param input input file channel
+     * @param position chunk start, start of a record
+     * @return time of previous record, or null if there is none
+     * @throws IOException if input is invalid or cannot be read
+     */
+    private Long previousTime(FileChannel input, long position) throws IOException {
+        if (this.inputFormat == Format.BINARY) {
+            ByteBuffer record = ByteBuffer.allocate(8);
+            while (record.hasRemaining()) {
+                if (input.read(record, position - 8 + record.position()) < 0) throw new IOException("Truncated input");
+            }
+            return record.getLong(0);
+        }
+
+        ByteBuffer window = ByteBuffer.allocate(1);
+        while (position > 0) {
+            long start = position - 1;
+            while (start > 0) {
+                window.clear();
+                input.read(window, start - 1);
+                if (window.get(0) == '\n') break;
+                start--;
+            }
+            Reader reader = new Reader(input.map(FileChannel.MapMode.READ_ONLY, start, position - start), start);
+            if (reader.next()) return reader.time;
+            position = start;
+        }
+        return null;
+    }
+
+    /***
+     * Helper method to write rule ids of one record
+     * @param output chunk output
+     * @param time record time
+     * @param bits rule id bitset of record
+     */
+    private void writeIds(OutputBuffer output, long time, long[] bits) {
+        if (this.outputFormat == Format.BINARY) {
+            for (long word: bits) output.putLong(word);
+            return;
+        }
+        output.putDecimal(time);
+        output.putChar('\t');
+        boolean first = true;
+        for (int word = 0; word < bits.length; word++) {
+            long value = bits[word];
+            while (value != 0) {
+                if (!first) output.putChar(',');
+                output.putDecimal((word << 6) + Long.numberOfTrailingZeros(value));
+                value &= value - 1;
+                first = false;
+            }
+        }
+        output.putChar('\n');
+    }
+
+    /***
+     * Helper method to wait for chunk, rethrowing its failure on calling thread
+     * @param future chunk to wait for
+     * @return chunk
+     * @throws IOException if chunk failed to be read
+     */
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for chunk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException("Chunk failed", e.getCause());
+        }
+    }
+
+    /***
+     * Output of one chunk.
+     */
+    static class Chunk {
+        private final OutputBuffer output;
+        private final long records;
+
+        private Chunk(OutputBuffer output, long records) {
+            this.output = output;
+            this.records = records;
+        }
+    }
+
+    /***
+     * Cursor over records of a mapped chunk.
+     */
+    private class Reader {
+        private final ByteBuffer buffer;
+        private final long offset;
+        private long time;
+
+        private Reader(ByteBuffer buffer, long offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        /***
+         * Read next record into time
+         * @return false when chunk has no more records
+         * @throws IOException if text record is not a number
+         */
+        private boolean next() throws IOException {
+            ByteBuffer buffer = this.buffer;
+            if (ReplayJob.this.inputFormat == Format.BINARY) {
+                if (buffer.remaining() < 8) return false;
+                this.time = buffer.getLong();
+                return true;
+            }
+
+            while (buffer.hasRemaining()) {
+                int lineStart = buffer.position();
+                long value = 0;
+                boolean negative = false;
+                int digits = 0;
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') break;
+                    if (b >= '0' && b <= '9') {
+                        if (digits == 18) throw new IOException("Timestamp too long at byte " + (this.offset + lineStart));
+                        value = value * 10 + (b - '0');
+                        digits++;
+                    } else if (b == '-' && digits == 0 && !negative) {
+                        negative = true;
+                    } else if (b != '\r' && b != ' ' && b != '\t') {
+                        throw new IOException("Invalid timestamp at byte " + (this.offset + lineStart));
+                    }
+                }
+                if (digits == 0) {
+                    if (negative) throw new IOException("Invalid timestamp at byte " + (this.offset + lineStart));
+                    continue;
+                }
+                this.time = negative ? -value : value;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /***
+     * Transition listener writing entered and exited rules of a chunk.
+     */
+    private class TransitionWriter implements TSTransitionListener {
+        private final OutputBuffer output;
+        private boolean enabled;
+
+        private TransitionWriter(OutputBuffer output) {
+            this.output = output;
+        }
+
+        @Override
+        public void timeSenseEntered(TSRule rule, long time) {
+            this.write(time, ReplayJob.this.index.getRuleId(rule), true);
+        }
+
+        @Override
+        public void timeSenseExited(TSRule rule, long time) {
+            this.write(time, ReplayJob.this.index.getRuleId(rule), false);
+        }
+
+        private void write(long time, int id, boolean isEntered) {
+            if (!this.enabled) return;
+            if (ReplayJob.this.outputFormat == Format.BINARY) {
+                this.output.putLong(time);
+                this.output.putInt(id);
+                this.output.putInt(isEntered ? 1 : 0);
+                return;
+            }
+            this.output.putDecimal(time);
+            this.output.putChar('\t');
+            this.output.putChar(isEntered ? '+' : '-');
+            this.output.putDecimal(id);
+            this.output.putChar('\n');
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.gwk.timesense.replay;
+
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.index.TSRuleIndex;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for ReplayJob class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class ReplayJobUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TSRuleIndex index;
+    private ExecutorService executor;
+    private long[] times;
+
+    @Before
+    public void setUp() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 15);
+        calendar.set(Calendar.MINUTE, 0);
+        configuration.addRule("CUSTOM_RULE", calendar.getTime(), new Date(calendar.getTimeInMillis() + 8 * 60 * 60 * 1000L));
+        this.index = new TSRuleIndex(configuration, TimeZone.getDefault(), TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        this.executor = Executors.newFixedThreadPool(4);
+
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        this.times = new long[500];
+        for (int i = 0; i < this.times.length; i++) {
+            this.times[i] = calendar.getTimeInMillis() + i * 17 * 60 * 1000L;
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.executor.shutdown();
+    }
+
+    private File binaryInput() throws IOException {
+        File file = this.folder.newFile();
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        for (long time: this.times) output.writeLong(time);
+        output.close();
+        return file;
+    }
+
+    private File textInput() throws IOException {
+        File file = this.folder.newFile();
+        StringBuilder text = new StringBuilder();
+        for (long time: this.times) text.append(time).append(time % 3 == 0 ? "\r\n\n" : "\n");
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(text.toString().getBytes("US-ASCII"));
+        output.close();
+        return file;
+    }
+
+    private String replay(File input, ReplayJob.Format inputFormat, ReplayJob.Mode mode, int chunkBytes) throws IOException {
+        ReplayJob job = new ReplayJob(this.index, inputFormat, ReplayJob.Format.TEXT, mode, chunkBytes);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FileChannel channel = new FileInputStream(input).getChannel();
+        try {
+            assertEquals("Every record should be replayed", this.times.length, job.run(channel, Channels.newChannel(output), this.executor, 3));
+        } finally {
+            channel.close();
+        }
+        return output.toString("US-ASCII");
+    }
+
+    @Test
+    public void replayIds() throws Exception {
+        String result = this.replay(this.binaryInput(), ReplayJob.Format.BINARY, ReplayJob.Mode.IDS, 64);
+
+        StringBuilder expected = new StringBuilder();
+        long[] bits = new long[this.index.getWords()];
+        for (long time: this.times) {
+            this.index.detect(time, bits, 0);
+            expected.append(time).append('\t');
+            String separator = "";
+            for (int id = 0; id < this.index.getRuleCount(); id++) {
+                if ((bits[0] & (1L << id)) != 0) {
+                    expected.append(separator).append(id);
+                    separator = ",";
+                }
+            }
+            expected.append('\n');
+        }
+        assertEquals("Chunked output should be equal to sequential detection", expected.toString(), result);
+    }
+
+    @Test
+    public void replayTextInput() throws Exception {
+        String binary = this.replay(this.binaryInput(), ReplayJob.Format.BINARY, ReplayJob.Mode.IDS, ReplayJob.DEFAULT_CHUNK_BYTES);
+        String text = this.replay(this.textInput(), ReplayJob.Format.TEXT, ReplayJob.Mode.IDS, 100);
+
+        assertEquals("Text input should give the same output", binary, text);
+    }
+
+    @Test
+    public void replayTransitions() throws Exception {
+        String single = this.replay(this.binaryInput(), ReplayJob.Format.BINARY, ReplayJob.Mode.TRANSITIONS, ReplayJob.DEFAULT_CHUNK_BYTES);
+        String chunked = this.replay(this.binaryInput(), ReplayJob.Format.BINARY, ReplayJob.Mode.TRANSITIONS, 80);
+        String text = this.replay(this.textInput(), ReplayJob.Format.TEXT, ReplayJob.Mode.TRANSITIONS, 90);
+
+        assertTrue("First transition should enter night rule", single.startsWith(this.times[0] + "\t+3\n"));
+        assertEquals("Chunked transitions should be equal to single chunk", single, chunked);
+        assertEquals("Text input should give the same transitions", single, text);
+    }
+
+    @Test(expected = IOException.class)
+    public void replayInvalidText() throws Exception {
+        File file = this.folder.newFile();
+        FileOutputStream output = new FileOutputStream(file);
+        output.write("1000\nabc\n".getBytes("US-ASCII"));
+        output.close();
+        this.replay(file, ReplayJob.Format.TEXT, ReplayJob.Mode.IDS, 64);
+    }
+}
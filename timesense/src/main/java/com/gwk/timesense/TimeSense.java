@@ -1,52 +1,310 @@
 package com.gwk.timesense;
 
+import com.gwk.timesense.clock.TSClock;
+import com.gwk.timesense.clock.TSClockTarget;
+import com.gwk.timesense.clock.TSSystemClock;
+import com.gwk.timesense.configuration.TSCompiledConfiguration;
 import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.index.TSBatchResult;
+import com.gwk.timesense.index.TSRuleIndex;
+import com.gwk.timesense.index.TSStreamClassifier;
+import com.gwk.timesense.index.TSTransition;
+import com.gwk.timesense.listener.TSAsyncListener;
+import com.gwk.timesense.listener.TSIndexedListener;
 import com.gwk.timesense.listener.TSListener;
+import com.gwk.timesense.listener.TSListenerRegistry;
+import com.gwk.timesense.listener.TSOverflowPolicy;
+import com.gwk.timesense.listener.TSTransitionListener;
+import com.gwk.timesense.metrics.TSMetrics;
+import com.gwk.timesense.publisher.TSEventPublisher;
+import com.gwk.timesense.rule.TSCompiledRule;
+import com.gwk.timesense.rule.TSPeriod;
 import com.gwk.timesense.rule.TSRule;
 
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 /***
- * TimeSense singleton class.
+ * TimeSense engine class.
+ * Engines are independent, each with its own configuration and listeners. getInstance() gives a shared default engine,
+ * and engines with equal rules share the same compiled lookup data.
+ * Safe to use from many threads: detection and trigger read published immutable snapshots (configuration with its lookup table,
+ * and listener registry) without locking, while changes to settings and listeners are serialized and swap in a new snapshot.
  *
  * @author Anselmus KA Kurniawan
  * @version 0.1
  */
-public class TimeSense {
+public class TimeSense implements TSClockTarget {
 
-    private TSConfiguration configuration;
-    private ArrayList<TSListener> genericListeners;
-    private HashMap<String, ArrayList<TSListener>> specificListeners;
+    public static final int DEFAULT_PARALLEL_RULE_COUNT = 1 << 14;
 
     /***
-     * Singleton.
+     * Rules active in previous trigger, rule ids are only meaningful with the index they were detected from.
      */
-    private static TimeSense instance;
-    private TimeSense() {
-        this.configuration = new TSConfiguration();
-        this.genericListeners = new ArrayList<TSListener>();
-        this.specificListeners = new HashMap<String, ArrayList<TSListener>>();
+    private static class ActiveRules {
+        private final TSRuleIndex index;
+        private final long[] bits;
+
+        private ActiveRules(TSRuleIndex index, long[] bits) {
+            this.index = index;
+            this.bits = bits;
+        }
+    }
+
+    /***
+     * Rule specific listeners resolved to rule ids of an index, so trigger can find them by array index.
+     */
+    private static class RuleListeners {
+        private final TSRuleIndex index;
+        private final TSListenerRegistry registry;
+        private final TSListener[][] listeners;
+
+        private RuleListeners(TSRuleIndex index, TSListenerRegistry registry) {
+            this.index = index;
+            this.registry = registry;
+            this.listeners = new TSListener[index.getRuleCount()][];
+            for (int id = 0; id < this.listeners.length; id++) {
+                TSListener[] listeners = registry.getSpecificListeners(index.getRule(id).getName());
+                this.listeners[id] = listeners == null ? NO_LISTENERS : listeners;
+            }
+        }
     }
+
+    /***
+     * Configuration and lookup settings published together, so readers never mix a configuration with the time zone,
+     * resolution, or index of another one. Index is null until built, and replaced when configuration version changed.
+     */
+    private static class EngineState {
+        private final TSConfiguration configuration;
+        private final TimeZone timeZone;
+        private final int indexResolution;
+        private final TSRuleIndex index;
+
+        private EngineState(TSConfiguration configuration, TimeZone timeZone, int indexResolution, TSRuleIndex index) {
+            this.configuration = configuration;
+            this.timeZone = timeZone;
+            this.indexResolution = indexResolution;
+            this.index = index;
+        }
+    }
+
+    private static final TSListener[] NO_LISTENERS = new TSListener[0];
+
+    private final AtomicReference<EngineState> state;
+    private volatile TSListenerRegistry listeners;
+    private Executor dispatchExecutor;
+    private int dispatchCapacity;
+    private TSOverflowPolicy dispatchPolicy;
+    private IdentityHashMap<Object, TSAsyncListener> asyncListeners;
+    private volatile Boolean edgeTriggered;
+    private final AtomicReference<ActiveRules> activeRules;
+    private volatile RuleListeners ruleListeners;
+    private volatile TSMetrics metrics;
+    private final TSMetrics dispatchMetrics;
+    private volatile ExecutorService detectExecutor;
+    private volatile TSClock clock;
+    private volatile int parallelRuleCount;
+
+    /***
+     * Default engine.
+     */
+    private static volatile TimeSense instance;
     public static TimeSense getInstance() {
-        if (instance == null) instance = new TimeSense();
+        if (instance == null) {
+            synchronized (TimeSense.class) {
+                if (instance == null) instance = new TimeSense();
+            }
+        }
         return instance;
     }
 
+    /***
+     * Constructor with empty configuration.
+     */
+    public TimeSense() {
+        this(new TSConfiguration());
+    }
+
+    /***
+     * Constructor.
+     *
+     * @param configuration Configuration used by this engine
+     */
+    public TimeSense(TSConfiguration configuration) {
+        this.state = new AtomicReference<EngineState>(new EngineState(configuration, TimeZone.getDefault(), TSRuleIndex.DEFAULT_SLOT_MILLIS, null));
+        this.listeners = TSListenerRegistry.EMPTY;
+        this.asyncListeners = new IdentityHashMap<Object, TSAsyncListener>();
+        this.edgeTriggered = false;
+        this.activeRules = new AtomicReference<ActiveRules>();
+        this.parallelRuleCount = DEFAULT_PARALLEL_RULE_COUNT;
+        this.clock = TSSystemClock.INSTANCE;
+        this.dispatchMetrics = new TSMetrics() {
+            @Override
+            public void detected(int timeCount, long nanos) {
+            }
+
+            @Override
+            public void matched(int ruleId) {
+            }
+
+            @Override
+            public void dispatched(Object listener, long nanos) {
+                TSMetrics metrics = TimeSense.this.metrics;
+                if (metrics != null) metrics.dispatched(listener, nanos);
+            }
+        };
+    }
+
     /***
      * @return TSConfiguration Getter for configuration property
      */
     public TSConfiguration getConfiguration() {
-        return configuration;
+        return state.get().configuration;
     }
 
     /***
      * @param configuration Set configuration property with this value
      */
-    public void setConfiguration(TSConfiguration configuration) {
-        this.configuration = configuration;
+    public synchronized void setConfiguration(TSConfiguration configuration) {
+        EngineState state = this.state.get();
+        this.state.set(new EngineState(configuration, state.timeZone, state.indexResolution, null));
+    }
+
+    /***
+     * Set configuration together with an index already built from it (for example TSConfigurationFile.getIndex()),
+     * time zone and index resolution are taken from index so it is used without rebuilding.
+     * All four are swapped at once, concurrent detections see either previous or new configuration
+     *
+     * @param configuration Set configuration property with this value
+     * @param index Index built from current state of configuration
+     */
+    public synchronized void setConfiguration(TSConfiguration configuration, TSRuleIndex index) {
+        if (!index.isBuiltFrom(configuration)) throw new IllegalArgumentException("Index should be built from configuration");
+        this.state.set(new EngineState(configuration, index.getTimeZone(), index.getSlotMillis(), index));
+    }
+
+    /***
+     * @return TimeZone Getter for time zone property, used to read rule times and detected times
+     */
+    public TimeZone getTimeZone() {
+        return state.get().timeZone;
+    }
+
+    /***
+     * @param timeZone Set time zone property with this value
+     */
+    public synchronized void setTimeZone(TimeZone timeZone) {
+        EngineState state = this.state.get();
+        this.state.set(new EngineState(state.configuration, timeZone, state.indexResolution, null));
+    }
+
+    /***
+     * @return TSClock Getter for clock property, source of current time for methods without explicit time
+     */
+    @Override
+    public TSClock getClock() {
+        return clock;
+    }
+
+    /***
+     * Use TSVirtualClock to run detection and triggers faster than real time
+     *
+     * @param clock Set clock property with this value
+     */
+    public void setClock(TSClock clock) {
+        if (clock == null) throw new NullPointerException("Clock should not be null");
+        this.clock = clock;
+    }
+
+    /***
+     * @return Boolean Getter for edge triggered property
+     */
+    public Boolean getEdgeTriggered() {
+        return edgeTriggered;
+    }
+
+    /***
+     * In edge triggered mode trigger() only calls TSListener for rules that were not active in previous trigger,
+     * instead of every active rule on every call
+     *
+     * @param edgeTriggered Set edge triggered property with this value
+     */
+    public void setEdgeTriggered(Boolean edgeTriggered) {
+        this.edgeTriggered = edgeTriggered;
+    }
+
+    /***
+     * @return int Getter for index resolution property, slot size in milliseconds of the detection lookup table
+     */
+    public int getIndexResolution() {
+        return state.get().indexResolution;
+    }
+
+    /***
+     * Smaller resolution use more memory for the lookup table but need less boundary checks per detection
+     *
+     * @param indexResolution Set index resolution property with this value
+     */
+    public synchronized void setIndexResolution(int indexResolution) {
+        EngineState state = this.state.get();
+        this.state.set(new EngineState(state.configuration, state.timeZone, indexResolution, null));
+    }
+
+    /***
+     * @return ExecutorService Getter for parallel detection executor property, null when detection runs on calling thread only
+     */
+    public ExecutorService getDetectExecutor() {
+        return detectExecutor;
+    }
+
+    /***
+     * @return int Getter for parallel rule count property, minimum rule count before detection is split across executor
+     */
+    public int getParallelRuleCount() {
+        return parallelRuleCount;
+    }
+
+    /***
+     * Compare rules of a single detection in parallel once configuration has at least parallelRuleCount rules.
+     * Only used when rule set is too large for the segment bitsets of the lookup table, smaller rule sets
+     * keep the sequential lookup where parallel overhead would dominate.
+     *
+     * @param executor Executor comparing parts of rule set, null to always detect on calling thread
+     * @param parallelRuleCount Minimum rule count for parallel detection
+     */
+    public synchronized void setParallelDetection(ExecutorService executor, int parallelRuleCount) {
+        this.parallelRuleCount = parallelRuleCount;
+        this.detectExecutor = executor;
+    }
+
+    /***
+     * Lookup table of current configuration, rebuilt when configuration, time zone, or resolution changed.
+     * Index is immutable, concurrent callers may build it at the same time but always get a consistent one.
+     * A rebuilt index is only published if configuration, time zone, and resolution were not changed meanwhile.
+     *
+     * @return TSRuleIndex
+     */
+    public TSRuleIndex getIndex() {
+        EngineState state = this.state.get();
+        TSRuleIndex index = state.index;
+        if (index != null && index.isBuiltFrom(state.configuration)) return index;
+
+        TSConfiguration configuration = state.configuration;
+        TimeZone timeZone = state.timeZone;
+        index = configuration instanceof TSCompiledConfiguration ? ((TSCompiledConfiguration) configuration).getIndex() : null;
+        if (index == null || !index.getTimeZone().getID().equals(timeZone.getID()) || !index.getTimeZone().hasSameRules(timeZone) || index.getSlotMillis() != state.indexResolution) {
+            index = new TSRuleIndex(configuration, timeZone, state.indexResolution);
+        }
+        this.state.compareAndSet(state, new EngineState(configuration, timeZone, state.indexResolution, index));
+        return index;
     }
 
     /***
@@ -62,7 +320,7 @@ public class TimeSense {
      * @param rule Rule to be added to existing rules
      */
     public void addRule(TSRule rule) {
-        this.configuration.addRule(rule);
+        this.getConfiguration().addRule(rule);
     }
 
     /***
@@ -86,14 +344,25 @@ public class TimeSense {
      * @return Boolean whether update success or not
      */
     public Boolean updateRule(String ruleName, Date startTime, Date endTime) {
-        return this.configuration.updateRule(ruleName, startTime, endTime);
+        return this.getConfiguration().updateRule(ruleName, startTime, endTime);
+    }
+
+    /***
+     * Change priority of rule used by detectFirst
+     *
+     * @param ruleName Rule name to be updated
+     * @param priority Priority change with this value
+     * @return Boolean whether update success or not
+     */
+    public Boolean updatePriority(String ruleName, int priority) {
+        return this.getConfiguration().updatePriority(ruleName, priority);
     }
 
     /***
      * @param ruleName Remove rule with this name from configuration
      */
     public void removeRule(String ruleName) {
-        this.configuration.removeRule(ruleName);
+        this.getConfiguration().removeRule(ruleName);
     }
 
     /***
@@ -101,7 +370,7 @@ public class TimeSense {
      * @return ArrayList<Date>
      */
     public ArrayList<Date> getTimeRange(String ruleName) {
-        TSRule rule = this.configuration.findRule(ruleName);
+        TSRule rule = this.getConfiguration().findRule(ruleName);
         ArrayList<Date> dates = new ArrayList<Date>();
 
         dates.add(rule.getStartTime());
@@ -110,13 +379,88 @@ public class TimeSense {
         return dates;
     }
 
+    /***
+     * Find rules of configuration sharing any time of day with rule, reading rule times in engine time zone
+     *
+     * @param rule Rule to be checked, registered in configuration or not
+     * @return ArrayList<TSRule> of other rules overlapping rule, in configuration order
+     */
+    public ArrayList<TSRule> findOverlappingRules(TSRule rule) {
+        EngineState state = this.state.get();
+        return state.configuration.findOverlappingRules(rule, state.timeZone);
+    }
+
+    /***
+     * @return Boolean whether any two rules of configuration share a time of day
+     */
+    public Boolean hasOverlappingRules() {
+        EngineState state = this.state.get();
+        return state.configuration.hasOverlappingRules(state.timeZone);
+    }
+
+    /***
+     * Milliseconds of time range inside rule, computed arithmetically for every period of constant time zone offset.
+     * Finding those periods reads the time zone offset once per week of range, see TSCompiledRule.getTimeSpent()
+     *
+     * @param rule Rule to be measured
+     * @param from Range start (included)
+     * @param to Range end (excluded)
+     * @return long Milliseconds inside rule
+     */
+    public long getTimeSpent(TSRule rule, Date from, Date to) {
+        return rule.compile(this.getTimeZone()).getTimeSpent(from.getTime(), to.getTime());
+    }
+
+    /***
+     * Milliseconds of time range inside every rule of configuration
+     *
+     * @param from Range start (included)
+     * @param to Range end (excluded)
+     * @return long[] Milliseconds inside rule indexed by rule id (TSConfiguration.getRuleId())
+     */
+    public long[] getTimeSpent(Date from, Date to) {
+        return this.getIndex().getTimeSpent(from.getTime(), to.getTime());
+    }
+
+    /***
+     * @return TSMetrics Getter for metrics property
+     */
+    public TSMetrics getMetrics() {
+        return metrics;
+    }
+
+    /***
+     * Report detections, matched rules and listener callback latency to metrics sink.
+     * Nothing is measured while metrics is null (default)
+     *
+     * @param metrics Set metrics property with this value
+     */
+    public void setMetrics(TSMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /***
+     * Enable asynchronous dispatch for listeners added from now on. Each listener gets its own bounded queue
+     * drained on executor (see TSAsyncListener), so slow listeners no longer stall trigger or each other.
+     *
+     * @param executor Executor running the callbacks, null to go back to synchronous dispatch
+     * @param capacity Maximum pending callbacks per listener
+     * @param policy What to do when a listener queue is full, BLOCK needs an executor running callbacks on other threads
+     */
+    public synchronized void setAsyncDispatch(Executor executor, int capacity, TSOverflowPolicy policy) {
+        this.dispatchExecutor = executor;
+        this.dispatchCapacity = capacity;
+        this.dispatchPolicy = policy;
+        this.asyncListeners = new IdentityHashMap<Object, TSAsyncListener>();
+    }
+
     /***
      * Add listener for all rules in TimeSense
      *
      * @param listener TSListener to be added
      */
-    public void addListener(TSListener listener) {
-        this.genericListeners.add(listener);
+    public synchronized void addListener(TSListener listener) {
+        this.listeners = this.listeners.withListener((TSListener) this.dispatcher(listener));
     }
 
     /***
@@ -125,21 +469,61 @@ public class TimeSense {
      * @param ruleName Rule name identifier
      * @param listener TSListener to be added
      */
-    public void addListener(String ruleName, TSListener listener) {
-        ArrayList<TSListener> listeners = this.specificListeners.get(ruleName);
-        if (listeners == null) {
-            listeners = new ArrayList<TSListener>();
-            this.specificListeners.put(ruleName, listeners);
-        }
-        listeners.add(listener);
+    public synchronized void addListener(String ruleName, TSListener listener) {
+        this.listeners = this.listeners.withListener(ruleName, (TSListener) this.dispatcher(listener));
+    }
+
+    /***
+     * Add listener called by trigger() when a rule becomes active or stops being active
+     *
+     * @param listener TSTransitionListener to be added
+     */
+    public synchronized void addListener(TSTransitionListener listener) {
+        this.listeners = this.listeners.withListener((TSTransitionListener) this.dispatcher(listener));
+    }
+
+    /***
+     * Create publisher of rule transitions and triggers, registered as listener until removePublisher()
+     *
+     * @return TSEventPublisher to subscribe to
+     */
+    public synchronized TSEventPublisher createPublisher() {
+        TSEventPublisher publisher = new TSEventPublisher(new TSClock() {
+            @Override
+            public long currentTimeMillis() {
+                return TimeSense.this.clock.currentTimeMillis();
+            }
+        });
+        this.listeners = this.listeners.withListener((TSListener) publisher).withListener((TSTransitionListener) publisher);
+        return publisher;
+    }
+
+    /***
+     * Unregister publisher and complete its subscribers
+     *
+     * @param publisher created by createPublisher()
+     */
+    public synchronized void removePublisher(TSEventPublisher publisher) {
+        this.listeners = this.listeners.withoutListener((TSListener) publisher).withoutListener((TSTransitionListener) publisher);
+        publisher.close();
     }
 
     /***
      * Remove all listeners
      */
-    public void removeListeners() {
-        this.genericListeners = new ArrayList<TSListener>();
-        this.specificListeners = new HashMap<String, ArrayList<TSListener>>();
+    public synchronized void removeListeners() {
+        this.listeners = TSListenerRegistry.EMPTY;
+        this.asyncListeners.clear();
+    }
+
+    /***
+     * Remove transition listener from TimeSense
+     *
+     * @param listener to be removed
+     */
+    public synchronized void removeListener(TSTransitionListener listener) {
+        this.listeners = this.listeners.withoutListener(listener);
+        this.releaseDispatchers();
     }
 
     /***
@@ -147,12 +531,9 @@ public class TimeSense {
      *
      * @param listener to be removed
      */
-    public void removeListener(TSListener listener) {
-        this.genericListeners.remove(listener);
-        for (String key: this.specificListeners.keySet()) {
-            ArrayList<TSListener> listeners = this.specificListeners.get(key);
-            listeners.remove(listener);
-        }
+    public synchronized void removeListener(TSListener listener) {
+        this.listeners = this.listeners.withoutListener(listener);
+        this.releaseDispatchers();
     }
 
     /***
@@ -160,8 +541,9 @@ public class TimeSense {
      *
      * @param ruleName Rule name identifier
      */
-    public void removeListener(String ruleName) {
-        this.specificListeners.remove(ruleName);
+    public synchronized void removeListener(String ruleName) {
+        this.listeners = this.listeners.withoutListener(ruleName);
+        this.releaseDispatchers();
     }
 
     /***
@@ -170,10 +552,110 @@ public class TimeSense {
      * @param ruleName Rule name identifier
      * @param listener TSListener to be removed
      */
-    public void removeListener(String ruleName, TSListener listener) {
-        ArrayList<TSListener> listeners = this.specificListeners.get(ruleName);
-        if (listeners == null) return;
-        listeners.remove(listener);
+    public synchronized void removeListener(String ruleName, TSListener listener) {
+        this.listeners = this.listeners.withoutListener(ruleName, listener);
+        this.releaseDispatchers();
+    }
+
+    /***
+     * Helper method to get rule specific listeners by rule id, resolving rule names again only when index or listeners changed
+     * @param index index used for detection
+     * @param registry listeners used for trigger
+     * @return listeners indexed by rule id
+     */
+    private TSListener[][] getRuleListeners(TSRuleIndex index, TSListenerRegistry registry) {
+        RuleListeners ruleListeners = this.ruleListeners;
+        if (ruleListeners == null || ruleListeners.index != index || ruleListeners.registry != registry) {
+            ruleListeners = new RuleListeners(index, registry);
+            this.ruleListeners = ruleListeners;
+        }
+        return ruleListeners.listeners;
+    }
+
+    /***
+     * Helper method to call rule specific listeners, by rule id for TSIndexedListener and by rule name otherwise.
+     * Rule not in current index has no id, TSIndexedListener is then called by rule name
+     * @param listeners listeners to be called
+     * @param rule triggered rule
+     * @param ruleId triggered rule id, -1 if rule is not in current index
+     * @param metrics sink for callback latency, may be null
+     */
+    private void triggerListeners(TSListener[] listeners, TSRule rule, int ruleId, TSMetrics metrics) {
+        for (TSListener listener: listeners) {
+            long start = metrics == null ? 0 : System.nanoTime();
+            if (listener instanceof TSIndexedListener && ruleId >= 0) {
+                ((TSIndexedListener) listener).timeSenseTriggered(ruleId);
+            } else {
+                listener.timeSenseTriggered(rule.getName());
+            }
+            if (metrics != null && !(listener instanceof TSAsyncListener)) metrics.dispatched(listener, System.nanoTime() - start);
+        }
+    }
+
+    /***
+     * Helper method to call listeners for all rules, TSEventPublisher gets the trigger time instead of reading its clock
+     * @param listeners listeners to be called
+     * @param time trigger time in epoch milliseconds
+     * @param metrics sink for callback latency, may be null
+     */
+    private void triggerGenericListeners(TSListener[] listeners, long time, TSMetrics metrics) {
+        for (TSListener listener: listeners) {
+            long start = metrics == null ? 0 : System.nanoTime();
+            if (listener instanceof TSEventPublisher) {
+                ((TSEventPublisher) listener).timeSenseTriggered(time);
+            } else {
+                listener.timeSenseTriggered();
+            }
+            if (metrics != null && !(listener instanceof TSAsyncListener)) metrics.dispatched(listener, System.nanoTime() - start);
+        }
+    }
+
+    /***
+     * Helper method to report every rule set in rule id bitsets
+     * @param metrics sink for matched rules
+     * @param bits rule id bitsets, one after another
+     * @param length number of words used in bits
+     * @param words number of words of each bitset
+     */
+    private void reportMatches(TSMetrics metrics, long[] bits, int length, int words) {
+        for (int word = 0; word < length; word++) {
+            long matched = bits[word];
+            while (matched != 0) {
+                metrics.matched(((word % words) << 6) + Long.numberOfTrailingZeros(matched));
+                matched &= matched - 1;
+            }
+        }
+    }
+
+    /***
+     * Helper method to forget asynchronous wrappers no longer registered, so removed listeners and their queues can be collected
+     */
+    private void releaseDispatchers() {
+        for (Iterator<TSAsyncListener> iterator = this.asyncListeners.values().iterator(); iterator.hasNext(); ) {
+            if (!this.listeners.contains(iterator.next())) iterator.remove();
+        }
+    }
+
+    /***
+     * Helper method to wrap listener for asynchronous dispatch when enabled, one wrapper (and queue) per listener.
+     * Wrappers report callback latency themselves when callbacks run, keyed by the wrapped listener
+     * @param listener listener to be registered
+     * @return listener or its TSAsyncListener
+     */
+    private Object dispatcher(Object listener) {
+        if (listener instanceof TSAsyncListener) {
+            TSAsyncListener asyncListener = (TSAsyncListener) listener;
+            if (asyncListener.getMetrics() == null) asyncListener.setMetrics(this.dispatchMetrics);
+            return listener;
+        }
+        if (this.dispatchExecutor == null) return listener;
+        TSAsyncListener asyncListener = this.asyncListeners.get(listener);
+        if (asyncListener == null) {
+            asyncListener = TSAsyncListener.wrap(listener, this.dispatchExecutor, this.dispatchCapacity, this.dispatchPolicy);
+            asyncListener.setMetrics(this.dispatchMetrics);
+            this.asyncListeners.put(listener, asyncListener);
+        }
+        return asyncListener;
     }
 
     /***
@@ -182,7 +664,7 @@ public class TimeSense {
      * @return ArrayList<TSRule> of detected rules
      */
     public ArrayList<TSRule> detect() {
-        return this.detect(new Date());
+        return this.detect(this.now());
     }
 
     /***
@@ -192,18 +674,189 @@ public class TimeSense {
      * @return ArrayList<TSRule> of detected rules
      */
     public ArrayList<TSRule> detect(Date time) {
-        ArrayList<TSRule> array = new ArrayList<TSRule>();
-        for (TSRule rule: this.configuration.getRules()) {
-            if (this.isMatch(rule, time)) array.add(rule);
+        TSMetrics metrics = this.metrics;
+        if (metrics == null) return this.detect(this.getIndex(), time.getTime());
+
+        TSRuleIndex index = this.getIndex();
+        long[] bits = new long[index.getWords()];
+        long start = System.nanoTime();
+        this.detect(index, time.getTime(), bits);
+        metrics.detected(1, System.nanoTime() - start);
+        this.reportMatches(metrics, bits, bits.length, bits.length);
+        return index.getRules(bits, 0);
+    }
+
+    /***
+     * Detect highest priority rule for current time
+     *
+     * @return TSRule with highest priority, or null if no rule match
+     */
+    public TSRule detectFirst() {
+        return this.detectFirst(this.now());
+    }
+
+    /***
+     * Detect highest priority rule (TSConfiguration.getPriority()) without building list of every matching rule,
+     * rules with equal priority keep configuration order
+     *
+     * @param time to be checked with rules
+     * @return TSRule with highest priority, or null if no rule match
+     */
+    public TSRule detectFirst(Date time) {
+        TSMetrics metrics = this.metrics;
+        if (metrics == null) return this.getIndex().detectFirst(time.getTime());
+
+        TSRuleIndex index = this.getIndex();
+        long start = System.nanoTime();
+        TSRule rule = index.detectFirst(time.getTime());
+        metrics.detected(1, System.nanoTime() - start);
+        if (rule != null) metrics.matched(index.getRuleId(rule));
+        return rule;
+    }
+
+    /***
+     * Helper method to read current time from clock
+     * @return current time
+     */
+    private Date now() {
+        return new Date(this.clock.currentTimeMillis());
+    }
+
+    /***
+     * Helper method to detect rules, in parallel when rule set is large enough
+     * @param index lookup table
+     * @param epochMillis time to be checked with rules
+     * @return detected rules
+     */
+    private ArrayList<TSRule> detect(TSRuleIndex index, long epochMillis) {
+        ExecutorService executor = this.detectExecutor;
+        if (executor == null || index.getRuleCount() < this.parallelRuleCount) return index.detect(epochMillis);
+
+        long[] bits = new long[index.getWords()];
+        index.detect(epochMillis, bits, 0, executor);
+        return index.getRules(bits, 0);
+    }
+
+    /***
+     * Helper method to fill rule id bitset, in parallel when rule set is large enough
+     * @param index lookup table
+     * @param epochMillis time to be checked with rules
+     * @param bits bitset to be filled
+     */
+    private void detect(TSRuleIndex index, long epochMillis, long[] bits) {
+        ExecutorService executor = this.detectExecutor;
+        if (executor == null || index.getRuleCount() < this.parallelRuleCount) {
+            index.detect(epochMillis, bits, 0);
+        } else {
+            index.detect(epochMillis, bits, 0, executor);
         }
-        return array;
+    }
+
+    /***
+     * Detect rules for a batch of times without creating Date or list per time
+     *
+     * @param times to be checked with rules, in epoch milliseconds
+     * @param result filled with rule id bitset of every time, rule id is rule position in configuration
+     */
+    public void detect(long[] times, TSBatchResult result) {
+        TSMetrics metrics = this.metrics;
+        if (metrics == null) {
+            this.getIndex().detect(times, result);
+            return;
+        }
+
+        long start = System.nanoTime();
+        this.getIndex().detect(times, result);
+        metrics.detected(times.length, System.nanoTime() - start);
+        this.reportMatches(metrics, result.getBits(), result.getSize() * result.getWords(), result.getWords());
+    }
+
+    /***
+     * Count times matching each rule for a batch of times, when rules of every single time are not needed
+     *
+     * @param times to be checked with rules, in epoch milliseconds
+     * @return long[] Number of matching times indexed by rule id (TSConfiguration.getRuleId())
+     */
+    public long[] count(long[] times) {
+        return this.count(times, null);
+    }
+
+    /***
+     * Count times matching each rule for a batch of times, large batches are split across processors
+     *
+     * @param times to be checked with rules, in epoch milliseconds
+     * @param executor counting parts of large batches in parallel, or null to count on calling thread
+     * @return long[] Number of matching times indexed by rule id (TSConfiguration.getRuleId())
+     */
+    public long[] count(long[] times, ExecutorService executor) {
+        TSMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        TSRuleIndex index = this.getIndex();
+        long[] counts = executor == null ? index.count(times) : index.count(times, executor);
+        if (metrics != null) metrics.detected(times.length, System.nanoTime() - start);
+        return counts;
+    }
+
+    /***
+     * Create streaming classifier for time ordered events using current configuration
+     *
+     * @param listener called when an event enters or exits a rule
+     * @return TSStreamClassifier
+     */
+    public TSStreamClassifier createStreamClassifier(TSTransitionListener listener) {
+        return new TSStreamClassifier(this.getIndex(), listener);
+    }
+
+    /***
+     * Find next instant where any rule starts or ends, so caller can schedule one wakeup instead of polling trigger()
+     *
+     * @return TSTransition after current time, or null if no rule ever changes
+     */
+    @Override
+    public TSTransition nextTransition() {
+        return this.nextTransition(this.now());
+    }
+
+    /***
+     * Find next instant where any rule starts or ends, so caller can schedule one wakeup instead of polling trigger()
+     *
+     * @param after time to search from (excluded)
+     * @return TSTransition after time, or null if no rule ever changes
+     */
+    public TSTransition nextTransition(Date after) {
+        return this.getIndex().nextTransition(after.getTime());
+    }
+
+    /***
+     * @return TSPeriod of default rules containing current time
+     */
+    public TSPeriod classify() {
+        return this.classify(this.clock.currentTimeMillis());
+    }
+
+    /***
+     * @param time to be classified
+     * @return TSPeriod of default rules containing time
+     */
+    public TSPeriod classify(Date time) {
+        return this.classify(time.getTime());
+    }
+
+    /***
+     * Find period of default rules containing time with one table lookup, without creating rules or calendars
+     *
+     * @param epochMillis Time to be classified
+     * @return TSPeriod of default rules containing time
+     */
+    public TSPeriod classify(long epochMillis) {
+        return TSPeriod.of(TSCompiledRule.timeOfDay(epochMillis, this.getTimeZone()));
     }
 
     /***
      * @return Whether current time is morning or not
      */
     public Boolean isMorning() {
-        return this.isMorning(new Date());
+        return this.isMorning(this.now());
     }
 
     /***
@@ -211,15 +864,14 @@ public class TimeSense {
      * @return Whether time is morning or not
      */
     public Boolean isMorning(Date time) {
-        TSRule rule = TSRule.morning();
-        return this.isMatch(rule, time);
+        return this.classify(time.getTime()) == TSPeriod.MORNING;
     }
 
     /***
      * @return Whether current time is afternoon or not
      */
     public Boolean isAfternoon() {
-        return this.isAfternoon(new Date());
+        return this.isAfternoon(this.now());
     }
 
     /***
@@ -227,15 +879,14 @@ public class TimeSense {
      * @return Whether time is afternoon or not
      */
     public Boolean isAfternoon(Date time) {
-        TSRule rule = TSRule.afternoon();
-        return this.isMatch(rule, time);
+        return this.classify(time.getTime()) == TSPeriod.AFTERNOON;
     }
 
     /***
      * @return Whether current time is evening or not
      */
     public Boolean isEvening() {
-        return this.isEvening(new Date());
+        return this.isEvening(this.now());
     }
 
     /***
@@ -243,15 +894,14 @@ public class TimeSense {
      * @return Whether time is evening or not
      */
     public Boolean isEvening(Date time) {
-        TSRule rule = TSRule.evening();
-        return this.isMatch(rule, time);
+        return this.classify(time.getTime()) == TSPeriod.EVENING;
     }
 
     /***
      * @return Whether current time is night or not
      */
     public Boolean isNight() {
-        return this.isNight(new Date());
+        return this.isNight(this.now());
     }
 
     /***
@@ -259,8 +909,7 @@ public class TimeSense {
      * @return Whether time is night or not
      */
     public Boolean isNight(Date time) {
-        TSRule rule = TSRule.night();
-        return this.isMatch(rule, time);
+        return this.classify(time.getTime()) == TSPeriod.NIGHT;
     }
 
     /***
@@ -268,7 +917,7 @@ public class TimeSense {
      * @return Whether current time match rule criteria
      */
     public Boolean isMatch(TSRule rule) {
-        return this.isMatch(rule, new Date());
+        return this.isMatch(rule, this.now());
     }
 
     /***
@@ -277,14 +926,26 @@ public class TimeSense {
      * @return Whether time match rule criteria
      */
     public Boolean isMatch(TSRule rule, Date time) {
-        return this.insideDate(time, rule.getStartTime(), rule.getEndTime());
+        return this.isMatch(rule, time.getTime());
+    }
+
+    /***
+     * Allocation free match using compiled rule offsets
+     *
+     * @param rule to be checked
+     * @param epochMillis time to be checked with rule
+     * @return Whether time match rule criteria
+     */
+    public boolean isMatch(TSRule rule, long epochMillis) {
+        return rule.compile(this.getTimeZone()).isMatch(epochMillis);
     }
 
     /***
      * Trigger matched rule's listeners
      */
+    @Override
     public void trigger() {
-        this.trigger(new Date());
+        this.trigger(this.now());
     }
 
     /***
@@ -293,18 +954,70 @@ public class TimeSense {
      * @param time to be checked with rules
      */
     public void trigger(Date time) {
-        ArrayList<TSRule> matchRules = this.detect(time);
-        for (TSRule rule: matchRules) {
-            ArrayList<TSListener> listeners = this.specificListeners.get(rule.getName());
-            if (listeners != null && listeners.size() > 0) {
-                for (TSListener listener: listeners) {
-                    listener.timeSenseTriggered(rule.getName());
+        TSRuleIndex index = this.getIndex();
+        TSListenerRegistry registry = this.listeners;
+        TSListener[][] ruleListeners = this.getRuleListeners(index, registry);
+        TSMetrics metrics = this.metrics;
+        long[] matchRules = new long[index.getWords()];
+        long start = metrics == null ? 0 : System.nanoTime();
+        this.detect(index, time.getTime(), matchRules);
+        if (metrics != null) {
+            metrics.detected(1, System.nanoTime() - start);
+            this.reportMatches(metrics, matchRules, matchRules.length, matchRules.length);
+        }
+
+        ActiveRules previous = this.activeRules.getAndSet(new ActiveRules(index, matchRules));
+        long[] previousRules = this.translateActiveRules(previous, index);
+
+        long[] triggerRules = matchRules;
+        if (this.edgeTriggered) {
+            triggerRules = new long[matchRules.length];
+            for (int word = 0; word < matchRules.length; word++) {
+                triggerRules[word] = matchRules[word] & ~previousRules[word];
+            }
+        }
+
+        boolean isTriggered = false;
+        for (int word = 0; word < triggerRules.length; word++) {
+            long bits = triggerRules[word];
+            while (bits != 0) {
+                int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                isTriggered = true;
+                TSListener[] listeners = ruleListeners[id];
+                if (listeners.length > 0) {
+                    this.triggerListeners(listeners, index.getRule(id), id, metrics);
                 }
             }
         }
-        if (!matchRules.isEmpty()) {
-            for (TSListener listener : this.genericListeners) {
-                listener.timeSenseTriggered();
+        if (isTriggered) {
+            this.triggerGenericListeners(registry.getGenericListeners(), time.getTime(), metrics);
+        }
+
+        TSTransitionListener[] transitionListeners = registry.getTransitionListeners();
+        if (transitionListeners.length == 0) return;
+        for (int word = 0; word < matchRules.length; word++) {
+            long exited = (matchRules[word] ^ previousRules[word]) & previousRules[word];
+            while (exited != 0) {
+                TSRule rule = index.getRule((word << 6) + Long.numberOfTrailingZeros(exited));
+                exited &= exited - 1;
+                for (TSTransitionListener listener : transitionListeners) {
+                    start = metrics == null ? 0 : System.nanoTime();
+                    listener.timeSenseExited(rule, time.getTime());
+                    if (metrics != null && !(listener instanceof TSAsyncListener)) metrics.dispatched(listener, System.nanoTime() - start);
+                }
+            }
+        }
+        for (int word = 0; word < matchRules.length; word++) {
+            long entered = (matchRules[word] ^ previousRules[word]) & matchRules[word];
+            while (entered != 0) {
+                TSRule rule = index.getRule((word << 6) + Long.numberOfTrailingZeros(entered));
+                entered &= entered - 1;
+                for (TSTransitionListener listener : transitionListeners) {
+                    start = metrics == null ? 0 : System.nanoTime();
+                    listener.timeSenseEntered(rule, time.getTime());
+                    if (metrics != null && !(listener instanceof TSAsyncListener)) metrics.dispatched(listener, System.nanoTime() - start);
+                }
             }
         }
     }
@@ -315,7 +1028,7 @@ public class TimeSense {
      * @param rule to be checked
      */
     public void triggerMatch(TSRule rule) {
-        this.triggerMatch(rule, new Date());
+        this.triggerMatch(rule, this.now());
     }
 
     /***
@@ -325,59 +1038,48 @@ public class TimeSense {
      * @param time to be checked with rule
      */
     public void triggerMatch(TSRule rule, Date time) {
-        if (this.isMatch(rule, time)) {
-            ArrayList<TSListener> listeners = this.specificListeners.get(rule.getName());
-            if (listeners != null && listeners.size() > 0) {
-                for (TSListener listener: listeners) {
-                    listener.timeSenseTriggered(rule.getName());
-                }
-            }
-            for (TSListener listener : this.genericListeners) {
-                listener.timeSenseTriggered();
+        TSMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        boolean isMatch = this.isMatch(rule, time);
+        if (metrics != null) metrics.detected(1, System.nanoTime() - start);
+
+        if (isMatch) {
+            int ruleId = -1;
+            TSListenerRegistry registry = this.listeners;
+            TSListener[] listeners = registry.getSpecificListeners(rule.getName());
+            if (metrics != null || (listeners != null && listeners.length > 0)) ruleId = this.getIndex().getRuleId(rule);
+            if (metrics != null && ruleId >= 0) metrics.matched(ruleId);
+            if (listeners != null && listeners.length > 0) {
+                this.triggerListeners(listeners, rule, ruleId, metrics);
             }
+            this.triggerGenericListeners(registry.getGenericListeners(), time.getTime(), metrics);
         }
     }
 
     /***
-     * Helper method to check whether date inside start and end date
-     * @param date to be checked
-     * @param start lower date bound
-     * @param end upper date bound
-     * @return whether inside or not
+     * Helper method to map rules active in previous trigger to rule ids of current index
+     * @param previous rules active in previous trigger, may be null
+     * @param index current index
+     * @return bitset of previously active rules that still exist in current index
      */
-    private Boolean insideDate(Date date, Date start, Date end) {
-        Date now = new Date();
-
-        Calendar nowCalendar = Calendar.getInstance();
-        nowCalendar.setTime(now);
-
-        Calendar tomorrowCalendar = Calendar.getInstance();
-        tomorrowCalendar.setTime(now);
-        tomorrowCalendar.add(Calendar.DATE, 1);
-
-        Calendar dateCalendar = Calendar.getInstance();
-        dateCalendar.setTime(date);
+    private long[] translateActiveRules(ActiveRules previous, TSRuleIndex index) {
+        if (previous != null && previous.index == index) return previous.bits;
 
-        Calendar startCalendar = Calendar.getInstance();
-        startCalendar.setTime(start);
-        startCalendar.set(nowCalendar.get(Calendar.YEAR), nowCalendar.get(Calendar.MONTH), nowCalendar.get(Calendar.DAY_OF_MONTH));
-        Date startTime = startCalendar.getTime();
+        long[] rules = new long[index.getWords()];
+        if (previous == null) return rules;
 
-        Calendar endCalendar = Calendar.getInstance();
-        endCalendar.setTime(end);
-        if (startCalendar.get(Calendar.HOUR_OF_DAY) <= endCalendar.get(Calendar.HOUR_OF_DAY)) {
-            endCalendar.set(nowCalendar.get(Calendar.YEAR), nowCalendar.get(Calendar.MONTH), nowCalendar.get(Calendar.DAY_OF_MONTH));
-        } else {
-            endCalendar.set(tomorrowCalendar.get(Calendar.YEAR), tomorrowCalendar.get(Calendar.MONTH), tomorrowCalendar.get(Calendar.DAY_OF_MONTH));
-
-            if (dateCalendar.get(Calendar.HOUR_OF_DAY) >= 0 && dateCalendar.get(Calendar.HOUR_OF_DAY) <= endCalendar.get(Calendar.HOUR_OF_DAY)) {
-                dateCalendar.set(tomorrowCalendar.get(Calendar.YEAR), tomorrowCalendar.get(Calendar.MONTH), tomorrowCalendar.get(Calendar.DAY_OF_MONTH));
+        Set<TSRule> previousRules = Collections.newSetFromMap(new IdentityHashMap<TSRule, Boolean>());
+        for (int word = 0; word < previous.bits.length; word++) {
+            long bits = previous.bits[word];
+            while (bits != 0) {
+                previousRules.add(previous.index.getRule((word << 6) + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
             }
         }
-        Date endTime = endCalendar.getTime();
-        Date dateTime = dateCalendar.getTime();
-
-        return dateTime.getTime() >= startTime.getTime() && dateTime.getTime() < endTime.getTime();
+        for (int id = 0; id < index.getRuleCount(); id++) {
+            if (previousRules.contains(index.getRule(id))) rules[id >>> 6] |= 1L << id;
+        }
+        return rules;
     }
 
-}
+}
\ No newline at end of file
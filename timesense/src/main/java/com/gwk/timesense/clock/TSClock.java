@@ -0,0 +1,15 @@
+package com.gwk.timesense.clock;
+
+/***
+ * Source of current time used by TimeSense whenever no explicit time is given.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public interface TSClock {
+
+    /***
+     * @return long Current time in epoch milliseconds
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,28 @@
+package com.gwk.timesense.clock;
+
+import com.gwk.timesense.index.TSTransition;
+
+/***
+ * Engine moved by TSVirtualClock, implemented by TimeSense.
+ * Keeps clock package independent of TimeSense, so the clock only sees what it needs to drive a simulation.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public interface TSClockTarget {
+
+    /***
+     * @return TSClock Source of current time used by engine
+     */
+    TSClock getClock();
+
+    /***
+     * @return TSTransition Next instant after current time where any rule starts or ends, or null if no rule ever changes
+     */
+    TSTransition nextTransition();
+
+    /***
+     * Trigger listeners of rules matching current time
+     */
+    void trigger();
+}
@@ -0,0 +1,23 @@
+package com.gwk.timesense.clock;
+
+/***
+ * Clock reading system time, default clock of TimeSense.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSSystemClock implements TSClock {
+
+    public static final TSSystemClock INSTANCE = new TSSystemClock();
+
+    /***
+     * Constructor, use INSTANCE instead.
+     */
+    private TSSystemClock() {
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,100 @@
+package com.gwk.timesense.clock;
+
+import com.gwk.timesense.index.TSTransition;
+
+/***
+ * Clock moved by hand, for tests and simulations running faster than real time.
+ * Set it as TimeSense clock (TimeSense.setClock()), then move it with setTime() and advance(),
+ * or let run() and runTransitions() move it and trigger the engine (TSClockTarget, such as TimeSense) along the way.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSVirtualClock implements TSClock {
+
+    private volatile long time;
+
+    /***
+     * Constructor.
+     *
+     * @param time Start time in epoch milliseconds
+     */
+    public TSVirtualClock(long time) {
+        this.time = time;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    /***
+     * @param time Set current time with this value, in epoch milliseconds
+     */
+    public synchronized void setTime(long time) {
+        this.time = time;
+    }
+
+    /***
+     * @param millis Milliseconds to move clock forward
+     * @return long New current time
+     */
+    public synchronized long advance(long millis) {
+        this.time += millis;
+        return this.time;
+    }
+
+    /***
+     * Move clock forward one tick at a time until time, triggering engine after every tick.
+     * Listeners see the same callbacks as a real clock with trigger() called every tick, without waiting.
+     *
+     * @param target Engine using this clock
+     * @param until Last time to be reached (included)
+     * @param tickMillis Milliseconds between ticks
+     * @return long Number of ticks
+     */
+    public long run(TSClockTarget target, long until, long tickMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("Tick should be positive");
+        this.checkClock(target);
+        long ticks = 0;
+        for (long next = this.time + tickMillis; next <= until; next += tickMillis) {
+            this.time = next;
+            target.trigger();
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /***
+     * Jump from one rule transition to the next until time, triggering engine at every transition, then move clock to time.
+     * No rule changes between transitions, so transition listeners and edge triggered listeners see the same callbacks as
+     * with run(), whatever the tick size, and days of transitions take a few calls per transition.
+     *
+     * @param target Engine using this clock
+     * @param until Last time to be reached (included)
+     * @return long Number of transitions
+     * @throws IllegalStateException if next transition does not move clock forward
+     */
+    public long runTransitions(TSClockTarget target, long until) {
+        this.checkClock(target);
+        long transitions = 0;
+        while (true) {
+            TSTransition transition = target.nextTransition();
+            if (transition == null || transition.getTime().getTime() > until) break;
+            if (transition.getTime().getTime() <= this.time) throw new IllegalStateException("Next transition should be after current time");
+            this.time = transition.getTime().getTime();
+            target.trigger();
+            transitions++;
+        }
+        if (this.time < until) this.time = until;
+        return transitions;
+    }
+
+    /***
+     * Helper method to check engine reads time from this clock
+     * @param target engine to be checked
+     */
+    private void checkClock(TSClockTarget target) {
+        if (target.getClock() != this) throw new IllegalStateException("Engine should use this clock");
+    }
+}
@@ -0,0 +1,78 @@
+package com.gwk.timesense.configuration;
+
+import com.gwk.timesense.index.TSRuleIndex;
+import com.gwk.timesense.rule.TSRule;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.TimeZone;
+
+/***
+ * Immutable configuration built by TSConfiguration.Builder.compile().
+ * Rules are copied from builder and frozen, rule ids never change, and the lookup table (TSRuleIndex) is built once,
+ * so the configuration can be shared by many threads and TimeSense engines without ever being rebuilt.
+ * Methods changing rules throw UnsupportedOperationException, use TSConfiguration(TSConfiguration) to get a changeable copy.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSCompiledConfiguration extends TSConfiguration {
+
+    private final TSRuleIndex index;
+
+    /***
+     * Constructor.
+     *
+     * @param rules Rules to be copied
+     * @param timeZone Time zone of lookup table
+     * @param slotMillis Slot resolution of lookup table
+     */
+    TSCompiledConfiguration(ArrayList<TSRule> rules, TimeZone timeZone, int slotMillis) {
+        ArrayList<TSRule> copies = new ArrayList<TSRule>(rules.size());
+        for (TSRule rule: rules) {
+            copies.add(new TSRule(rule));
+        }
+        super.setRules(copies);
+        for (TSRule rule: copies) {
+            rule.freeze();
+        }
+        this.index = new TSRuleIndex(this, timeZone, slotMillis);
+    }
+
+    /***
+     * @return TSRuleIndex Lookup table built when configuration was compiled
+     */
+    public TSRuleIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public void setRules(ArrayList<TSRule> rules) {
+        throw new UnsupportedOperationException("Compiled configuration is immutable");
+    }
+
+    @Override
+    public void addRules(ArrayList<TSRule> rules) {
+        throw new UnsupportedOperationException("Compiled configuration is immutable");
+    }
+
+    @Override
+    public void addRule(TSRule rule) {
+        throw new UnsupportedOperationException("Compiled configuration is immutable");
+    }
+
+    @Override
+    public Boolean updateRule(String ruleName, Date startTime, Date endTime) {
+        throw new UnsupportedOperationException("Compiled configuration is immutable");
+    }
+
+    @Override
+    public Boolean updatePriority(String ruleName, int priority) {
+        throw new UnsupportedOperationException("Compiled configuration is immutable");
+    }
+
+    @Override
+    public void removeRule(String ruleName) {
+        throw new UnsupportedOperationException("Compiled configuration is immutable");
+    }
+}
@@ -1,12 +1,33 @@
 package com.gwk.timesense.configuration;
 
+import com.gwk.timesense.index.TSRuleIndex;
 import com.gwk.timesense.rule.TSRule;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.TimeZone;
 
 /***
  * Configuration object used in TimeSense detection.
+ * Configuration methods are synchronized on the configuration object.
+ * Rules are indexed by name and by rule key (TSRule equals and hashCode), so lookup and duplicate check take constant time.
+ * Indexes are keyed on a frozen snapshot of every rule, taken when it is added. Registered rules can still be changed
+ * with their setters: the configuration compares TSRule.getChangeCount() with the count it last saw, and when it differs
+ * takes new snapshots of changed rules and increases version, so indexes built from configuration are rebuilt.
+ * Rules are kept in slots in configuration order, a removed rule only clears its slot and a Fenwick tree of live slots
+ * gives rule ids, so removal takes O(log n) instead of shifting and renumbering following rules.
+ * Every registered rule is given its position in configuration as id (getRuleId()). Ids are kept by the configuration,
+ * not by the rule, so the same rule object can be registered in many configurations with a different id in each.
+ * Rule priority is read from rule when it is added and kept by the configuration, change it with updatePriority().
+ * Overlap queries use an interval tree of rule times, built on first query and kept up to date by every change.
  *
  * @author Anselmus KA Kurniawan
  * @version 0.1
@@ -16,12 +37,14 @@ public class TSConfiguration {
     public static class Builder {
 
         private ArrayList<TSRule> rules;
+        private HashSet<TSRule> ruleKeys;
 
         /***
          * Constructor.
          */
         public Builder() {
             this.rules = new ArrayList<TSRule>();
+            this.ruleKeys = new HashSet<TSRule>();
         }
 
         /***
@@ -44,7 +67,7 @@ public class TSConfiguration {
          * @return Builder
          */
         public Builder addRule(TSRule rule) {
-            if (!this.rules.contains(rule)) this.rules.add(rule);
+            if (this.ruleKeys.add(rule)) this.rules.add(rule);
             return this;
         }
 
@@ -56,6 +79,26 @@ public class TSConfiguration {
             configuration.addRules(this.rules);
             return configuration;
         }
+
+        /***
+         * Build immutable configuration with lookup table for default time zone and index resolution
+         *
+         * @return TSCompiledConfiguration that builder build
+         */
+        public TSCompiledConfiguration compile() {
+            return this.compile(TimeZone.getDefault(), TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        }
+
+        /***
+         * Build immutable configuration with lookup table, rules are copied and frozen
+         *
+         * @param timeZone Time zone of lookup table, should be TimeSense.getTimeZone() of engines using configuration
+         * @param slotMillis Slot resolution of lookup table, should be TimeSense.getIndexResolution() of engines using configuration
+         * @return TSCompiledConfiguration that builder build
+         */
+        public TSCompiledConfiguration compile(TimeZone timeZone, int slotMillis) {
+            return new TSCompiledConfiguration(this.rules, timeZone, slotMillis);
+        }
     }
 
     /***
@@ -65,13 +108,25 @@ public class TSConfiguration {
         return new Builder();
     }
 
-    private ArrayList<TSRule> rules;
+    private TSRule[] slots;
+    private int slotCount;
+    private int ruleCount;
+    private int[] liveCounts;
+    private int[] slotPriorities;
+    private TSRule[] slotKeys;
+    private int[] slotModifications;
+    private IdentityHashMap<TSRule, Integer> ruleSlots;
+    private HashMap<String, ArrayDeque<TSRule>> ruleNames;
+    private HashMap<TSRule, Integer> ruleKeys;
+    private volatile int seenChanges;
+    private volatile int version;
+    private TSOverlapTree overlaps;
 
     /***
      * Constructor with empty rules.
      */
     public TSConfiguration() {
-        this.rules = new ArrayList<TSRule>();
+        this.reindex(new ArrayList<TSRule>());
     }
 
     /***
@@ -80,7 +135,7 @@ public class TSConfiguration {
      * @param configuration Configuration to copied
      */
     public TSConfiguration(TSConfiguration configuration) {
-        this.rules = new ArrayList<TSRule>(configuration.getRules());
+        this.reindex(configuration.getRules());
     }
 
     /***
@@ -96,23 +151,48 @@ public class TSConfiguration {
     }
 
     /***
-     * @return ArrayList<TSRule> Getter for rules property
+     * Change rules through configuration methods, so changes are synchronized and tracked by version
+     *
+     * @return ArrayList<TSRule> Copy of rules list
      */
-    public ArrayList<TSRule> getRules() {
+    public synchronized ArrayList<TSRule> getRules() {
+        ArrayList<TSRule> rules = new ArrayList<TSRule>(this.ruleCount);
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            if (this.slots[slot] != null) rules.add(this.slots[slot]);
+        }
         return rules;
     }
 
     /***
-     * @param rules Set rules property with this value
+     * Rules equal to a previous rule of list are skipped, like addRules
+     *
+     * @param rules Set rules property with a copy of this value
+     */
+    public synchronized void setRules(ArrayList<TSRule> rules) {
+        this.reindex(rules);
+        this.overlaps = null;
+        this.version++;
+    }
+
+    /***
+     * Version is increased on every change made through configuration methods or rule setters, used to invalidate precomputed data.
+     * Takes one read of TSRule.getChangeCount() while no rule changed, otherwise registered rules are checked once
+     *
+     * @return int Getter for version property
      */
-    public void setRules(ArrayList<TSRule> rules) {
-        this.rules = rules;
+    public int getVersion() {
+        if (TSRule.getChangeCount() != this.seenChanges) {
+            synchronized (this) {
+                this.refresh();
+            }
+        }
+        return version;
     }
 
     /***
      * @param rules Rules to be added to existing rules
      */
-    public void addRules(ArrayList<TSRule> rules) {
+    public synchronized void addRules(ArrayList<TSRule> rules) {
         for (TSRule rule: rules) {
             this.addRule(rule);
         }
@@ -121,8 +201,13 @@ public class TSConfiguration {
     /***
      * @param rule Rule to be added to existing rules
      */
-    public void addRule(TSRule rule) {
-        if (!this.rules.contains(rule)) this.rules.add(rule);
+    public synchronized void addRule(TSRule rule) {
+        this.refresh();
+        if (rule.isFrozen()) rule = new TSRule(rule);
+        if (this.ruleKeys.containsKey(rule)) return;
+        this.append(rule);
+        if (this.overlaps != null) this.overlaps.add(rule);
+        this.version++;
     }
 
     /***
@@ -138,28 +223,79 @@ public class TSConfiguration {
     }
 
     /***
-     * Update existing rule with new start time and end time
+     * Update existing rule with new start time and end time.
+     * Update is rejected when it would make the rule equal to another rule of configuration
      *
      * @param ruleName Rule name to be updated
      * @param startTime Start time change with this value
      * @param endTime End time change with this value
      * @return Boolean whether update success or not
      */
-    public Boolean updateRule(String ruleName, Date startTime, Date endTime) {
-        Boolean isUpdated = false;
+    public synchronized Boolean updateRule(String ruleName, Date startTime, Date endTime) {
         TSRule rule = this.findRule(ruleName);
         if (rule == null) return false;
+        int slot = this.ruleSlots.get(rule);
+        TSRule updated = new TSRule(ruleName, startTime, endTime);
+        if (!updated.equals(this.slotKeys[slot]) && this.ruleKeys.containsKey(updated)) return false;
+
+        int changes = TSRule.getChangeCount();
         rule.setStartTime(startTime);
         rule.setEndTime(endTime);
+        this.rekey(slot);
+        // Skip the check of every rule when the two setters above are the only changes since last check
+        if (this.seenChanges == changes && TSRule.getChangeCount() == changes + 2) this.seenChanges = changes + 2;
+        this.version++;
         return true;
     }
 
     /***
-     * @param ruleName Remove rule with this name from configuration
+     * Change priority of rule and increase version, so indexes built from configuration use the new priority
+     *
+     * @param ruleName Rule name to be updated
+     * @param priority Priority change with this value
+     * @return Boolean whether update success or not
      */
-    public void removeRule(String ruleName) {
+    public synchronized Boolean updatePriority(String ruleName, int priority) {
         TSRule rule = this.findRule(ruleName);
-        this.rules.remove(rule);
+        if (rule == null) return false;
+        rule.setPriority(priority);
+        this.slotPriorities[this.ruleSlots.get(rule)] = priority;
+        this.version++;
+        return true;
+    }
+
+    /***
+     * Priority is read from rule (TSRule.getPriority()) when rule is added, later changes made directly on rule
+     * are ignored, use updatePriority() instead
+     *
+     * @param rule Rule to be found, compared by identity
+     * @return int Rule priority in this configuration, or TSRule.getPriority() if rule is not registered
+     */
+    public synchronized int getPriority(TSRule rule) {
+        Integer slot = this.ruleSlots.get(rule);
+        return slot == null ? rule.getPriority() : this.slotPriorities[slot];
+    }
+
+    /***
+     * Removal takes O(log n), the rule slot is cleared and ids of following rules are derived from live slot counts
+     *
+     * @param ruleName Remove first rule with this name from configuration
+     */
+    public synchronized void removeRule(String ruleName) {
+        this.refresh();
+        ArrayDeque<TSRule> named = this.ruleNames.get(ruleName);
+        if (named == null) return;
+        TSRule rule = named.pollFirst();
+        if (named.isEmpty()) this.ruleNames.remove(ruleName);
+
+        int slot = this.ruleSlots.remove(rule);
+        this.slots[slot] = null;
+        this.ruleCount--;
+        for (int i = slot + 1; i < this.liveCounts.length; i += i & -i) this.liveCounts[i]--;
+        this.removeKey(this.slotKeys[slot]);
+        this.slotKeys[slot] = null;
+        if (this.overlaps != null) this.overlaps.remove(rule);
+        this.version++;
     }
 
     /***
@@ -168,10 +304,267 @@ public class TSConfiguration {
      * @param ruleName Rule name to find
      * @return TSRule
      */
-    public TSRule findRule(String ruleName) {
-        for (TSRule rule: this.rules) {
-            if (rule.getName().equals(ruleName)) return rule;
+    public synchronized TSRule findRule(String ruleName) {
+        this.refresh();
+        ArrayDeque<TSRule> named = this.ruleNames.get(ruleName);
+        return named == null ? null : named.peekFirst();
+    }
+
+    /***
+     * Id is the rule position in configuration, dense (0 to rule count - 1) so it can be used as array index.
+     * Ids after a removed rule are shifted down
+     *
+     * @param rule Rule to be found, compared by identity
+     * @return int Rule id in this configuration, or -1 if rule is not registered
+     */
+    public synchronized int getRuleId(TSRule rule) {
+        Integer slot = this.ruleSlots.get(rule);
+        if (slot == null) return -1;
+        int id = 0;
+        for (int i = slot; i > 0; i -= i & -i) id += this.liveCounts[i];
+        return id;
+    }
+
+    /***
+     * Find rules sharing any time of day with rule, reading rule times in default time zone
+     *
+     * @param rule Rule to be checked, registered in configuration or not
+     * @return ArrayList<TSRule> of other rules overlapping rule, in configuration order
+     */
+    public ArrayList<TSRule> findOverlappingRules(TSRule rule) {
+        return this.findOverlappingRules(rule, TimeZone.getDefault());
+    }
+
+    /***
+     * Find rules sharing any time of day with rule. Interval tree query takes O(log n) when nothing overlaps and
+     * O(k log n) at worst for k overlapping rules, result is then sorted into configuration order in O(k log k)
+     *
+     * @param rule Rule to be checked, registered in configuration or not
+     * @param timeZone Time zone used to read rule times
+     * @return ArrayList<TSRule> of other rules overlapping rule, in configuration order
+     */
+    public synchronized ArrayList<TSRule> findOverlappingRules(TSRule rule, TimeZone timeZone) {
+        this.refresh();
+        ArrayList<TSRule> rules = this.getOverlaps(timeZone).find(rule);
+        Collections.sort(rules, new Comparator<TSRule>() {
+            @Override
+            public int compare(TSRule rule1, TSRule rule2) {
+                return TSConfiguration.this.ruleSlots.get(rule1) - TSConfiguration.this.ruleSlots.get(rule2);
+            }
+        });
+        return rules;
+    }
+
+    /***
+     * @return Whether any two rules share a time of day, reading rule times in default time zone
+     */
+    public boolean hasOverlappingRules() {
+        return this.hasOverlappingRules(TimeZone.getDefault());
+    }
+
+    /***
+     * Overlapping pairs are counted as rules are added and removed, so this check takes constant time
+     *
+     * @param timeZone Time zone used to read rule times
+     * @return Whether any two rules share a time of day
+     */
+    public synchronized boolean hasOverlappingRules(TimeZone timeZone) {
+        this.refresh();
+        return this.getOverlaps(timeZone).getOverlapCount() > 0;
+    }
+
+    /***
+     * Helper method to get interval tree of rules, rebuilt when time zone changed
+     * @param timeZone time zone used to read rule times
+     * @return interval tree
+     */
+    private TSOverlapTree getOverlaps(TimeZone timeZone) {
+        if (this.overlaps == null || !this.overlaps.isFor(timeZone)) this.overlaps = new TSOverlapTree(this.getRules(), timeZone);
+        return this.overlaps;
+    }
+
+    /***
+     * Helper method to put rule in next slot, compacting removed slots or growing slots array when full
+     * @param rule rule to be added, key already registered
+     */
+    private void append(TSRule rule) {
+        if (this.slotCount == this.slots.length) {
+            boolean compact = this.ruleCount * 2 <= this.slots.length;
+            TSRule[] slots = compact ? this.slots : new TSRule[this.slots.length * 2];
+            int[] priorities = compact ? this.slotPriorities : new int[slots.length];
+            TSRule[] keys = compact ? this.slotKeys : new TSRule[slots.length];
+            int[] modifications = compact ? this.slotModifications : new int[slots.length];
+            int count = 0;
+            for (int slot = 0; slot < this.slotCount; slot++) {
+                TSRule live = this.slots[slot];
+                if (live == null) continue;
+                slots[count] = live;
+                priorities[count] = this.slotPriorities[slot];
+                keys[count] = this.slotKeys[slot];
+                modifications[count] = this.slotModifications[slot];
+                this.ruleSlots.put(live, count++);
+            }
+            Arrays.fill(slots, count, this.slotCount, null);
+            Arrays.fill(keys, count, this.slotCount, null);
+            this.slots = slots;
+            this.slotPriorities = priorities;
+            this.slotKeys = keys;
+            this.slotModifications = modifications;
+            this.slotCount = count;
+            this.rebuildLiveCounts();
+        }
+
+        int slot = this.slotCount++;
+        this.slots[slot] = rule;
+        this.slotPriorities[slot] = rule.getPriority();
+        this.slotModifications[slot] = rule.getModificationCount();
+        this.slotKeys[slot] = snapshot(rule);
+        this.addKey(this.slotKeys[slot]);
+        this.ruleCount++;
+        for (int i = slot + 1; i < this.liveCounts.length; i += i & -i) this.liveCounts[i]++;
+        this.ruleSlots.put(rule, slot);
+        ArrayDeque<TSRule> named = this.ruleNames.get(rule.getName());
+        if (named == null) {
+            named = new ArrayDeque<TSRule>(1);
+            this.ruleNames.put(rule.getName(), named);
+        }
+        named.addLast(rule);
+    }
+
+    /***
+     * Helper method to take new snapshots of rules changed by their setters since last check, increasing version if any
+     */
+    private void refresh() {
+        int changes = TSRule.getChangeCount();
+        if (changes == this.seenChanges) return;
+        this.seenChanges = changes;
+        boolean isChanged = false;
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            TSRule rule = this.slots[slot];
+            if (rule != null && rule.getModificationCount() != this.slotModifications[slot]) {
+                this.rekey(slot);
+                isChanged = true;
+            }
+        }
+        if (isChanged) this.version++;
+    }
+
+    /***
+     * Helper method to replace snapshot of rule in slot, moving rule in name and key index and overlap tree
+     * @param slot slot of changed rule
+     */
+    private void rekey(int slot) {
+        TSRule rule = this.slots[slot];
+        TSRule key = this.slotKeys[slot];
+        this.slotModifications[slot] = rule.getModificationCount();
+        TSRule updated = snapshot(rule);
+        this.slotKeys[slot] = updated;
+        this.removeKey(key);
+        this.addKey(updated);
+
+        if (!key.getName().equals(updated.getName())) {
+            ArrayDeque<TSRule> named = this.ruleNames.get(key.getName());
+            for (Iterator<TSRule> iterator = named.iterator(); iterator.hasNext(); ) {
+                if (iterator.next() == rule) iterator.remove();
+            }
+            if (named.isEmpty()) this.ruleNames.remove(key.getName());
+            this.ruleNames.put(updated.getName(), this.insert(this.ruleNames.get(updated.getName()), rule, slot));
+        }
+
+        if (this.overlaps != null) {
+            this.overlaps.remove(rule);
+            this.overlaps.add(rule);
+        }
+    }
+
+    /***
+     * Helper method to add rule to rules of the same name, keeping configuration order
+     * @param named rules of the same name in configuration order, may be null
+     * @param rule rule to be added
+     * @param slot slot of rule
+     * @return rules of the same name with rule
+     */
+    private ArrayDeque<TSRule> insert(ArrayDeque<TSRule> named, TSRule rule, int slot) {
+        ArrayDeque<TSRule> ordered = new ArrayDeque<TSRule>(named == null ? 1 : named.size() + 1);
+        if (named != null) {
+            for (TSRule other: named) {
+                if (rule != null && this.ruleSlots.get(other) > slot) {
+                    ordered.addLast(rule);
+                    rule = null;
+                }
+                ordered.addLast(other);
+            }
+        }
+        if (rule != null) ordered.addLast(rule);
+        return ordered;
+    }
+
+    /***
+     * Helper method to count registered rule equal to key
+     * @param key rule snapshot
+     */
+    private void addKey(TSRule key) {
+        Integer count = this.ruleKeys.get(key);
+        this.ruleKeys.put(key, count == null ? 1 : count + 1);
+    }
+
+    /***
+     * Helper method to uncount registered rule equal to key
+     * @param key rule snapshot
+     */
+    private void removeKey(TSRule key) {
+        Integer count = this.ruleKeys.get(key);
+        if (count == null) return;
+        if (count == 1) {
+            this.ruleKeys.remove(key);
+        } else {
+            this.ruleKeys.put(key, count - 1);
+        }
+    }
+
+    /***
+     * Helper method to copy name and times of rule into a frozen rule, used as index key that cannot change
+     * @param rule rule to be copied
+     * @return frozen snapshot
+     */
+    private static TSRule snapshot(TSRule rule) {
+        TSRule key = new TSRule(rule.getName(), rule.getStartTime(), rule.getEndTime());
+        key.freeze();
+        return key;
+    }
+
+    /***
+     * Helper method to rebuild Fenwick tree counting live slots, so rule id is a prefix sum
+     */
+    private void rebuildLiveCounts() {
+        int[] counts = new int[this.slots.length + 1];
+        for (int i = 1; i < counts.length; i++) {
+            if (this.slots[i - 1] != null) counts[i]++;
+            int parent = i + (i & -i);
+            if (parent < counts.length) counts[parent] += counts[i];
+        }
+        this.liveCounts = counts;
+    }
+
+    /***
+     * Helper method to rebuild slots, name and key index from rules list, frozen rules are replaced by copies
+     * @param rules rules in configuration order
+     */
+    private void reindex(ArrayList<TSRule> rules) {
+        this.slots = new TSRule[Math.max(16, rules.size())];
+        this.slotCount = 0;
+        this.ruleCount = 0;
+        this.liveCounts = new int[this.slots.length + 1];
+        this.slotPriorities = new int[this.slots.length];
+        this.slotKeys = new TSRule[this.slots.length];
+        this.slotModifications = new int[this.slots.length];
+        this.ruleSlots = new IdentityHashMap<TSRule, Integer>();
+        this.ruleNames = new HashMap<String, ArrayDeque<TSRule>>();
+        this.ruleKeys = new HashMap<TSRule, Integer>();
+        this.seenChanges = TSRule.getChangeCount();
+        for (TSRule rule: rules) {
+            if (rule.isFrozen()) rule = new TSRule(rule);
+            if (!this.ruleKeys.containsKey(rule)) this.append(rule);
         }
-        return null;
     }
 }
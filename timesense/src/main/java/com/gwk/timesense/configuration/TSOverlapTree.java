@@ -0,0 +1,287 @@
+package com.gwk.timesense.configuration;
+
+import com.gwk.timesense.rule.TSCompiledRule;
+import com.gwk.timesense.rule.TSRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.TimeZone;
+
+/***
+ * Interval tree of rule times kept by TSConfiguration to answer overlap queries.
+ * Rules are stored as millisecond-of-day intervals in a treap ordered by start offset, every node keeps the
+ * largest end offset of its subtree so a query skips subtrees ending before the searched interval.
+ * Overnight rules are stored as two intervals, one until end of day and one from start of day, linked as twins so a
+ * query reports their rule once without a set of found rules.
+ * Not thread safe, only used while holding the configuration lock.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+class TSOverlapTree {
+
+    /***
+     * Interval of one rule, node of the treap.
+     */
+    private static class Node {
+        private final TSRule rule;
+        private final int start;
+        private final int end;
+        private final long sequence;
+        private final int priority;
+        private Node left;
+        private Node right;
+        private Node twin;
+        private int maxEnd;
+        private long mark;
+
+        private Node(TSRule rule, int start, int end, long sequence, int priority) {
+            this.rule = rule;
+            this.start = start;
+            this.end = end;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.maxEnd = end;
+        }
+
+        private int compareTo(Node node) {
+            if (this.start != node.start) return this.start < node.start ? -1 : 1;
+            return this.sequence < node.sequence ? -1 : (this.sequence == node.sequence ? 0 : 1);
+        }
+
+        private void update() {
+            int maxEnd = this.end;
+            if (this.left != null && this.left.maxEnd > maxEnd) maxEnd = this.left.maxEnd;
+            if (this.right != null && this.right.maxEnd > maxEnd) maxEnd = this.right.maxEnd;
+            this.maxEnd = maxEnd;
+        }
+    }
+
+    private final TimeZone timeZone;
+    private final IdentityHashMap<TSRule, Node[]> intervals;
+    private final Random random;
+    private Node root;
+    private long sequence;
+    private long query;
+    private int overlapCount;
+
+    /***
+     * Constructor.
+     *
+     * @param rules Rules to be added
+     * @param timeZone Time zone used to read rule times
+     */
+    TSOverlapTree(Collection<TSRule> rules, TimeZone timeZone) {
+        this.timeZone = timeZone;
+        this.intervals = new IdentityHashMap<TSRule, Node[]>();
+        this.random = new Random();
+        for (TSRule rule: rules) {
+            this.add(rule);
+        }
+    }
+
+    /***
+     * @param timeZone Time zone to be compared
+     * @return Whether rule times were read with the same time zone rules
+     */
+    boolean isFor(TimeZone timeZone) {
+        return this.timeZone.getID().equals(timeZone.getID()) && this.timeZone.hasSameRules(timeZone);
+    }
+
+    /***
+     * @return int Number of pairs of distinct rules that overlap
+     */
+    int getOverlapCount() {
+        return overlapCount;
+    }
+
+    /***
+     * Add rule intervals read from current rule times. Intervals are kept until rule is removed, TSConfiguration
+     * removes and adds a rule again when it notices its times changed, before answering any query
+     *
+     * @param rule Rule to be added
+     */
+    void add(TSRule rule) {
+        if (this.intervals.containsKey(rule)) return;
+        TSCompiledRule compiled = rule.compile(this.timeZone);
+        Node[] nodes = this.split(rule, compiled.getStartOffset(), compiled.getEndOffset());
+        this.overlapCount += this.find(rule, nodes).size();
+        for (Node node: nodes) {
+            this.root = this.insert(this.root, node);
+        }
+        this.intervals.put(rule, nodes);
+    }
+
+    /***
+     * Remove rule intervals, using rule times read when rule was added
+     *
+     * @param rule Rule to be removed
+     */
+    void remove(TSRule rule) {
+        Node[] nodes = this.intervals.remove(rule);
+        if (nodes == null) return;
+        for (Node node: nodes) {
+            this.root = this.delete(this.root, node);
+        }
+        this.overlapCount -= this.find(rule, nodes).size();
+    }
+
+    /***
+     * Find rules sharing any time of day with rule. Every reported interval costs a walk down the tree, so a query takes
+     * O(log n) when nothing overlaps and O(k log n) at worst for k overlapping rules, allocating only the result list
+     *
+     * @param rule Rule to be checked, in the tree or not
+     * @return ArrayList<TSRule> of other rules overlapping rule, in no particular order
+     */
+    ArrayList<TSRule> find(TSRule rule) {
+        Node[] nodes = this.intervals.get(rule);
+        if (nodes == null) {
+            TSCompiledRule compiled = rule.compile(this.timeZone);
+            nodes = this.split(rule, compiled.getStartOffset(), compiled.getEndOffset());
+        }
+        return this.find(rule, nodes);
+    }
+
+    /***
+     * Helper method to find distinct rules other than rule overlapping any of nodes
+     * @param rule rule to be excluded
+     * @param nodes intervals to be checked
+     * @return overlapping rules
+     */
+    private ArrayList<TSRule> find(TSRule rule, Node[] nodes) {
+        ArrayList<TSRule> found = new ArrayList<TSRule>();
+        this.query++;
+        for (Node node: nodes) {
+            this.collect(this.root, node.start, node.end, rule, found);
+        }
+        return found;
+    }
+
+    /***
+     * Helper method to collect rules of subtree overlapping interval, marking nodes with current query so a rule
+     * reached again through the same node or its twin is skipped
+     * @param node subtree root
+     * @param start interval start (included)
+     * @param end interval end (excluded)
+     * @param rule rule to be excluded
+     * @param found collected rules
+     */
+    private void collect(Node node, int start, int end, TSRule rule, ArrayList<TSRule> found) {
+        while (node != null && node.maxEnd > start) {
+            this.collect(node.left, start, end, rule, found);
+            if (node.start >= end) return;
+            if (node.end > start && node.rule != rule && node.mark != this.query
+                    && (node.twin == null || node.twin.mark != this.query)) {
+                found.add(node.rule);
+            }
+            if (node.end > start) node.mark = this.query;
+            node = node.right;
+        }
+    }
+
+    /***
+     * Helper method to cut rule time into intervals that do not wrap past midnight
+     * @param rule source rule
+     * @param startOffset start millisecond of day
+     * @param endOffset end millisecond of day
+     * @return intervals, empty when rule has no duration
+     */
+    private Node[] split(TSRule rule, int startOffset, int endOffset) {
+        if (startOffset < endOffset) return new Node[] {this.node(rule, startOffset, endOffset)};
+        if (startOffset == endOffset) return new Node[0];
+        if (endOffset == 0) return new Node[] {this.node(rule, startOffset, (int) TSCompiledRule.DAY_MILLIS)};
+        Node evening = this.node(rule, startOffset, (int) TSCompiledRule.DAY_MILLIS);
+        Node morning = this.node(rule, 0, endOffset);
+        evening.twin = morning;
+        morning.twin = evening;
+        return new Node[] {evening, morning};
+    }
+
+    /***
+     * Helper method to create node with unique position and random priority
+     * @param rule source rule
+     * @param start interval start
+     * @param end interval end
+     * @return node
+     */
+    private Node node(TSRule rule, int start, int end) {
+        return new Node(rule, start, end, this.sequence++, this.random.nextInt());
+    }
+
+    /***
+     * Helper method to insert node in subtree, rotating it up while its priority is higher than its parent
+     * @param root subtree root
+     * @param node node to be inserted
+     * @return new subtree root
+     */
+    private Node insert(Node root, Node node) {
+        if (root == null) return node;
+        if (node.compareTo(root) < 0) {
+            root.left = this.insert(root.left, node);
+            if (root.left.priority > root.priority) root = this.rotateRight(root);
+        } else {
+            root.right = this.insert(root.right, node);
+            if (root.right.priority > root.priority) root = this.rotateLeft(root);
+        }
+        root.update();
+        return root;
+    }
+
+    /***
+     * Helper method to delete node from subtree, rotating it down until it is a leaf
+     * @param root subtree root
+     * @param node node to be deleted
+     * @return new subtree root
+     */
+    private Node delete(Node root, Node node) {
+        if (root == null) return null;
+        int order = node.compareTo(root);
+        if (order < 0) {
+            root.left = this.delete(root.left, node);
+        } else if (order > 0) {
+            root.right = this.delete(root.right, node);
+        } else if (root.left == null) {
+            return root.right;
+        } else if (root.right == null) {
+            return root.left;
+        } else if (root.left.priority > root.right.priority) {
+            root = this.rotateRight(root);
+            root.right = this.delete(root.right, node);
+        } else {
+            root = this.rotateLeft(root);
+            root.left = this.delete(root.left, node);
+        }
+        root.update();
+        return root;
+    }
+
+    /***
+     * Helper method to rotate subtree right
+     * @param root subtree root
+     * @return new subtree root, former left child
+     */
+    private Node rotateRight(Node root) {
+        Node left = root.left;
+        root.left = left.right;
+        left.right = root;
+        root.update();
+        left.update();
+        return left;
+    }
+
+    /***
+     * Helper method to rotate subtree left
+     * @param root subtree root
+     * @return new subtree root, former right child
+     */
+    private Node rotateLeft(Node root) {
+        Node right = root.right;
+        root.right = right.left;
+        right.left = root;
+        root.update();
+        right.update();
+        return right;
+    }
+}
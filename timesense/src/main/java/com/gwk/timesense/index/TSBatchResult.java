@@ -0,0 +1,116 @@
+package com.gwk.timesense.index;
+
+/***
+ * Columnar result of batch detection, one rule id bitset per event stored back to back in a single long array.
+ * Reuse one result object across batches to avoid allocation.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSBatchResult {
+
+    private long[] bits;
+    private int size;
+    private int words;
+
+    /***
+     * Constructor.
+     *
+     * @param capacity Number of events the result can hold without growing
+     * @param ruleCount Number of rules the result can hold without growing
+     * @throws IllegalArgumentException if capacity or ruleCount is negative, or bitsets do not fit in one array
+     */
+    public TSBatchResult(int capacity, int ruleCount) {
+        if (capacity < 0 || ruleCount < 0) throw new IllegalArgumentException("Capacity and rule count should not be negative");
+        this.words = (int) ((ruleCount + 63L) >>> 6);
+        this.bits = new long[length(capacity, this.words)];
+    }
+
+    /***
+     * Prepare result for a batch, growing backing array only when it is too small
+     *
+     * @param size Number of events in batch
+     * @param words Number of long words per event bitset
+     * @throws IllegalArgumentException if bitsets of batch do not fit in one array
+     */
+    void prepare(int size, int words) {
+        int length = length(size, words);
+        if (this.bits.length < length) this.bits = new long[length];
+        this.size = size;
+        this.words = words;
+    }
+
+    /***
+     * Helper method to compute backing array length without int overflow
+     * @param size number of events
+     * @param words number of long words per event bitset
+     * @return array length
+     */
+    private static int length(int size, int words) {
+        long length = (long) size * words;
+        if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("Batch result should not exceed " + Integer.MAX_VALUE + " words");
+        return (int) length;
+    }
+
+    /***
+     * @return int Number of events in last batch
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /***
+     * @return int Number of long words per event bitset
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /***
+     * Bitset of event i starts at i * getWords(), bit n of the bitset is rule with id n
+     *
+     * @return long[] Getter for bits property
+     */
+    public long[] getBits() {
+        return bits;
+    }
+
+    /***
+     * @param event Event position in batch
+     * @param ruleId Rule id (rule position in configuration)
+     * @return Whether event match rule
+     */
+    public boolean isMatch(int event, int ruleId) {
+        return (this.bits[event * this.words + (ruleId >>> 6)] & (1L << ruleId)) != 0;
+    }
+
+    /***
+     * @param event Event position in batch
+     * @return int Number of rules matching event
+     */
+    public int getMatchCount(int event) {
+        int count = 0;
+        int base = event * this.words;
+        for (int word = 0; word < this.words; word++) {
+            count += Long.bitCount(this.bits[base + word]);
+        }
+        return count;
+    }
+
+    /***
+     * @param event Event position in batch
+     * @param fromRuleId Rule id to start searching from (included)
+     * @return int Next rule id matching event, or -1 if there is none
+     */
+    public int nextMatch(int event, int fromRuleId) {
+        int base = event * this.words;
+        int word = fromRuleId >>> 6;
+        if (word >= this.words) return -1;
+        long bits = this.bits[base + word] & (-1L << fromRuleId);
+        while (true) {
+            if (bits != 0) return (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (++word == this.words) return -1;
+            bits = this.bits[base + word];
+        }
+    }
+}
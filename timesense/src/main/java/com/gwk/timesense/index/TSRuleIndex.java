@@ -0,0 +1,575 @@
+package com.gwk.timesense.index;
+
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.rule.TSCompiledRule;
+import com.gwk.timesense.rule.TSRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/***
+ * Time-of-day lookup table built from TSConfiguration.
+ * The day is cut at every rule boundary into segments, each segment keeps a bitset of active rule ids
+ * (rule position in configuration), and a slot table maps a time of day to its segment in constant time.
+ * Lookup data lives in a shared TSRuleTable, the index only binds rule ids to TSRule objects of its configuration.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSRuleIndex {
+
+    public static final int DEFAULT_SLOT_MILLIS = 60 * 1000;
+    public static final int MAX_SEGMENT_WORDS = 1 << 20;
+    public static final int MIN_PARALLEL_COUNT = 1 << 16;
+
+    private final TSConfiguration configuration;
+    private final int version;
+    private final TimeZone timeZone;
+    private final TSRule[] rules;
+    private final int[] priorities;
+    private final TSRuleTable table;
+    private volatile IdentityHashMap<TSRule, Integer> ruleIds;
+    private volatile int[] priorityOrder;
+    private volatile int[] segmentFirst;
+
+    /***
+     * Constructor.
+     *
+     * @param configuration Configuration to be indexed
+     * @param timeZone Time zone used to read rule times and detected times
+     * @param slotMillis Slot resolution in milliseconds, smaller slot use more memory but need less boundary checks
+     */
+    public TSRuleIndex(TSConfiguration configuration, TimeZone timeZone, int slotMillis) {
+        this.configuration = configuration;
+        this.timeZone = timeZone;
+
+        int[] startOffsets;
+        int[] endOffsets;
+        synchronized (configuration) {
+            this.version = configuration.getVersion();
+            ArrayList<TSRule> source = configuration.getRules();
+            int count = source.size();
+            this.rules = source.toArray(new TSRule[count]);
+            this.priorities = priorities(configuration, this.rules);
+            startOffsets = new int[count];
+            endOffsets = new int[count];
+            for (int id = 0; id < count; id++) {
+                TSCompiledRule compiled = this.rules[id].compile(timeZone);
+                startOffsets[id] = compiled.getStartOffset();
+                endOffsets[id] = compiled.getEndOffset();
+            }
+        }
+        this.table = TSRuleTable.obtain(startOffsets, endOffsets, timeZone, slotMillis);
+    }
+
+    /***
+     * Constructor binding rules of configuration to prebuilt lookup data, rule times are only compiled to check they match the table.
+     *
+     * @param configuration Configuration to be indexed
+     * @param table Lookup data built from rules of configuration, in the same order
+     */
+    public TSRuleIndex(TSConfiguration configuration, TSRuleTable table) {
+        this.configuration = configuration;
+        this.timeZone = table.timeZone;
+        this.table = table;
+
+        synchronized (configuration) {
+            this.version = configuration.getVersion();
+            ArrayList<TSRule> source = configuration.getRules();
+            this.rules = source.toArray(new TSRule[source.size()]);
+            this.priorities = priorities(configuration, this.rules);
+        }
+        if (this.rules.length != table.getRuleCount()) throw new IllegalArgumentException("Table should have one entry for every rule");
+        for (int id = 0; id < this.rules.length; id++) {
+            TSCompiledRule compiled = this.rules[id].compile(this.timeZone);
+            if (compiled.getStartOffset() != table.startOffsets[id] || compiled.getEndOffset() != table.endOffsets[id]) throw new IllegalArgumentException("Table should match rule times");
+        }
+    }
+
+    /***
+     * @param configuration Configuration to be compared
+     * @return Whether index was built from current state of configuration
+     */
+    public boolean isBuiltFrom(TSConfiguration configuration) {
+        return this.configuration == configuration && this.version == configuration.getVersion();
+    }
+
+    /***
+     * @return TimeZone Getter for time zone property
+     */
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    /***
+     * @return int Getter for slot resolution property
+     */
+    public int getSlotMillis() {
+        return table.slotMillis;
+    }
+
+    /***
+     * @return int Number of indexed rules
+     */
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    /***
+     * @return int Number of long words in a rule id bitset
+     */
+    public int getWords() {
+        return table.words;
+    }
+
+    /***
+     * @param id Rule id
+     * @return TSRule with this id
+     */
+    public TSRule getRule(int id) {
+        return rules[id];
+    }
+
+    /***
+     * Rule id is the rule position in configuration when index was built
+     *
+     * @param rule Rule to be found, compared by identity
+     * @return int Rule id in this index, or -1 if rule is not indexed
+     */
+    public int getRuleId(TSRule rule) {
+        IdentityHashMap<TSRule, Integer> ids = this.ruleIds;
+        if (ids == null) {
+            ids = new IdentityHashMap<TSRule, Integer>(this.rules.length);
+            for (int id = 0; id < this.rules.length; id++) ids.put(this.rules[id], id);
+            this.ruleIds = ids;
+        }
+        Integer id = ids.get(rule);
+        return id == null ? -1 : id;
+    }
+
+    /***
+     * @return TSRuleTable Compiled lookup data, shared with every index of equal rules
+     */
+    public TSRuleTable getTable() {
+        return table;
+    }
+
+    /***
+     * @return int Number of segments, segment i starts at boundary i and ends at boundary i + 1 (or end of day)
+     */
+    public int getSegmentCount() {
+        return table.boundaries.length;
+    }
+
+    /***
+     * @param segment Segment index
+     * @return int Millisecond of day where segment starts
+     */
+    public int getSegmentStart(int segment) {
+        return table.boundaries[segment];
+    }
+
+    /***
+     * @param segment Segment index
+     * @return int Millisecond of day where segment ends, end of day for last segment
+     */
+    public int getSegmentEnd(int segment) {
+        return segment + 1 < table.boundaries.length ? table.boundaries[segment + 1] : (int) TSCompiledRule.DAY_MILLIS;
+    }
+
+    /***
+     * Find segment containing time of day using slot table
+     *
+     * @param timeOfDay Millisecond of day
+     * @return int Segment index
+     */
+    public int segmentOf(int timeOfDay) {
+        return this.table.segmentOf(timeOfDay);
+    }
+
+    /***
+     * Fill bitset with ids of rules matching time
+     *
+     * @param epochMillis Time to be checked with rules
+     * @param bits Bitset to be filled, at least getWords() long
+     * @param offset Position of bitset in bits array
+     */
+    public void detect(long epochMillis, long[] bits, int offset) {
+        this.table.detect(TSCompiledRule.timeOfDay(epochMillis, this.timeZone), bits, offset);
+    }
+
+    /***
+     * Fill bitset with ids of rules matching time, comparing rules in parallel when there is no segment bitset.
+     * Rules are split into one part of whole bitset words per processor, every part except the first is submitted
+     * to executor and the calling thread scans the first part meanwhile. Parts never write the same word.
+     *
+     * @param epochMillis Time to be checked with rules
+     * @param bits Bitset to be filled, at least getWords() long
+     * @param offset Position of bitset in bits array
+     * @param executor Executor scanning the other parts
+     */
+    public void detect(long epochMillis, final long[] bits, final int offset, ExecutorService executor) {
+        final TSRuleTable table = this.table;
+        final int timeOfDay = TSCompiledRule.timeOfDay(epochMillis, this.timeZone);
+        int parts = Math.min(Runtime.getRuntime().availableProcessors(), table.words);
+        if (table.segmentBits != null || parts <= 1) {
+            table.detect(timeOfDay, bits, offset);
+            return;
+        }
+
+        ArrayList<Future<?>> futures = new ArrayList<Future<?>>(parts - 1);
+        try {
+            for (int part = 1; part < parts; part++) {
+                final int fromWord = table.words * part / parts;
+                final int toWord = table.words * (part + 1) / parts;
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        table.scan(timeOfDay, bits, offset, fromWord, toWord);
+                    }
+                }));
+            }
+            table.scan(timeOfDay, bits, offset, 0, table.words / parts);
+            for (Future<?> future: futures) await(future);
+        } finally {
+            for (Future<?> future: futures) future.cancel(true);
+        }
+    }
+
+    /***
+     * Fill result with rule id bitset of every time, reusing this index for the whole batch
+     *
+     * @param times Times in epoch milliseconds
+     * @param result Result to be filled
+     */
+    public void detect(long[] times, TSBatchResult result) {
+        TSRuleTable table = this.table;
+        int words = table.words;
+        result.prepare(times.length, words);
+        long[] bits = result.getBits();
+        for (int i = 0; i < times.length; i++) {
+            table.detect(TSCompiledRule.timeOfDay(times[i], this.timeZone), bits, i * words);
+        }
+    }
+
+    /***
+     * Detect rules matching time
+     *
+     * @param epochMillis Time to be checked with rules
+     * @return ArrayList<TSRule> of detected rules in configuration order
+     */
+    public ArrayList<TSRule> detect(long epochMillis) {
+        TSRuleTable table = this.table;
+        ArrayList<TSRule> array = new ArrayList<TSRule>();
+        int timeOfDay = TSCompiledRule.timeOfDay(epochMillis, this.timeZone);
+        if (table.segmentBits != null) {
+            int base = table.segmentOf(timeOfDay) * table.words;
+            for (int word = 0; word < table.words; word++) {
+                long bits = table.segmentBits[base + word];
+                while (bits != 0) {
+                    array.add(this.rules[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+                    bits &= bits - 1;
+                }
+            }
+            return array;
+        }
+        for (int id = 0; id < this.rules.length; id++) {
+            if (TSCompiledRule.contains(table.startOffsets[id], table.endOffsets[id], timeOfDay)) array.add(this.rules[id]);
+        }
+        return array;
+    }
+
+    /***
+     * Count times matching each rule, without keeping the rules of every time
+     *
+     * @param times Times in epoch milliseconds
+     * @return long[] Number of matching times indexed by rule id
+     */
+    public long[] count(long[] times) {
+        long[] counts = new long[this.rules.length];
+        this.count(times, 0, times.length, counts);
+        return counts;
+    }
+
+    /***
+     * Count times matching each rule, splitting large batches into one part per processor.
+     * Every part except the first is submitted to executor, the calling thread counts the first part meanwhile.
+     * Batches smaller than MIN_PARALLEL_COUNT times per part are counted on the calling thread only.
+     *
+     * @param times Times in epoch milliseconds
+     * @param executor Executor counting the other parts
+     * @return long[] Number of matching times indexed by rule id
+     */
+    public long[] count(final long[] times, ExecutorService executor) {
+        int parts = Math.min(Runtime.getRuntime().availableProcessors(), times.length / MIN_PARALLEL_COUNT);
+        if (parts <= 1) return this.count(times);
+
+        ArrayList<Future<long[]>> futures = new ArrayList<Future<long[]>>(parts - 1);
+        for (int part = 1; part < parts; part++) {
+            final int from = (int) ((long) times.length * part / parts);
+            final int to = (int) ((long) times.length * (part + 1) / parts);
+            futures.add(executor.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() {
+                    long[] counts = new long[TSRuleIndex.this.rules.length];
+                    TSRuleIndex.this.count(times, from, to, counts);
+                    return counts;
+                }
+            }));
+        }
+
+        long[] counts = new long[this.rules.length];
+        try {
+            this.count(times, 0, times.length / parts, counts);
+            for (Future<long[]> future: futures) {
+                long[] partCounts = await(future);
+                for (int id = 0; id < counts.length; id++) counts[id] += partCounts[id];
+            }
+        } finally {
+            for (Future<long[]> future: futures) future.cancel(true);
+        }
+        return counts;
+    }
+
+    /***
+     * Helper method to add number of times matching each rule to counts.
+     * With segment bitsets times are counted per segment first, so each time costs one slot lookup whatever the rule count.
+     * @param times times in epoch milliseconds
+     * @param from first time (included)
+     * @param to last time (excluded)
+     * @param counts counts indexed by rule id
+     */
+    private void count(long[] times, int from, int to, long[] counts) {
+        TSRuleTable table = this.table;
+        TimeZone timeZone = this.timeZone;
+        if (table.segmentBits == null) {
+            int[] startOffsets = table.startOffsets;
+            int[] endOffsets = table.endOffsets;
+            for (int i = from; i < to; i++) {
+                int timeOfDay = TSCompiledRule.timeOfDay(times[i], timeZone);
+                for (int id = 0; id < counts.length; id++) {
+                    if (TSCompiledRule.contains(startOffsets[id], endOffsets[id], timeOfDay)) counts[id]++;
+                }
+            }
+            return;
+        }
+
+        long[] segmentCounts = new long[table.boundaries.length];
+        for (int i = from; i < to; i++) {
+            segmentCounts[table.segmentOf(TSCompiledRule.timeOfDay(times[i], timeZone))]++;
+        }
+        int words = table.words;
+        for (int segment = 0; segment < segmentCounts.length; segment++) {
+            long segmentCount = segmentCounts[segment];
+            if (segmentCount == 0) continue;
+            int base = segment * words;
+            for (int word = 0; word < words; word++) {
+                long bits = table.segmentBits[base + word];
+                while (bits != 0) {
+                    counts[(word << 6) + Long.numberOfTrailingZeros(bits)] += segmentCount;
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    /***
+     * Detect highest priority rule matching time (TSConfiguration.getPriority()), rules with equal priority keep configuration order.
+     * With segment bitsets the top rule of every segment is precomputed, so this is one slot lookup,
+     * otherwise rules are compared in priority order until the first match.
+     * Priorities are read when index is built, TSConfiguration.updatePriority() changes version so a new index is built.
+     *
+     * @param epochMillis Time to be checked with rules
+     * @return TSRule with highest priority, or null if no rule match
+     */
+    public TSRule detectFirst(long epochMillis) {
+        TSRuleTable table = this.table;
+        int timeOfDay = TSCompiledRule.timeOfDay(epochMillis, this.timeZone);
+        int[] order = this.getPriorityOrder();
+        if (table.segmentBits != null) {
+            int id = this.getSegmentFirst(order)[table.segmentOf(timeOfDay)];
+            return id < 0 ? null : this.rules[id];
+        }
+        for (int id: order) {
+            if (TSCompiledRule.contains(table.startOffsets[id], table.endOffsets[id], timeOfDay)) return this.rules[id];
+        }
+        return null;
+    }
+
+    /***
+     * @param bits Rule id bitset, as filled by detect
+     * @param offset Position of bitset in bits array
+     * @return ArrayList<TSRule> of rules in bitset in configuration order
+     */
+    public ArrayList<TSRule> getRules(long[] bits, int offset) {
+        ArrayList<TSRule> array = new ArrayList<TSRule>();
+        for (int word = 0; word < this.table.words; word++) {
+            long value = bits[offset + word];
+            while (value != 0) {
+                array.add(this.rules[(word << 6) + Long.numberOfTrailingZeros(value)]);
+                value &= value - 1;
+            }
+        }
+        return array;
+    }
+
+    /***
+     * Find first instant after time where any rule starts or ends.
+     * A boundary skipped by a time zone offset change (daylight saving time gap) happens at the first instant after the gap,
+     * and a boundary resolving to an instant not after time (repeated local hour) is skipped, so result is always after time.
+     *
+     * @param epochMillis Time to search from (excluded)
+     * @return TSTransition, or null if no rule ever changes
+     */
+    public TSTransition nextTransition(long epochMillis) {
+        TSRuleTable table = this.table;
+        long local = TSCompiledRule.localTime(epochMillis, this.timeZone);
+        long timeOfDay = local % TSCompiledRule.DAY_MILLIS;
+        if (timeOfDay < 0) timeOfDay += TSCompiledRule.DAY_MILLIS;
+        long dayStart = local - timeOfDay;
+
+        int segments = table.boundaries.length;
+        int current = table.segmentOf((int) timeOfDay);
+        for (int step = 1; step <= 2 * segments; step++) {
+            int segment = (current + step) % segments;
+            if (table.enterOffsets[segment] == table.enterOffsets[segment + 1] && table.exitOffsets[segment] == table.exitOffsets[segment + 1]) continue;
+
+            long boundary = dayStart + (current + step) / segments * TSCompiledRule.DAY_MILLIS + table.boundaries[segment];
+            long time = this.instantOf(boundary, epochMillis);
+            if (time <= epochMillis) continue;
+
+            ArrayList<TSRule> entered = new ArrayList<TSRule>();
+            for (int i = table.enterOffsets[segment]; i < table.enterOffsets[segment + 1]; i++) entered.add(this.rules[table.enterIds[i]]);
+            ArrayList<TSRule> exited = new ArrayList<TSRule>();
+            for (int i = table.exitOffsets[segment]; i < table.exitOffsets[segment + 1]; i++) exited.add(this.rules[table.exitIds[i]]);
+            return new TSTransition(new Date(time), entered, exited);
+        }
+        return null;
+    }
+
+    /***
+     * Milliseconds of time range that match each rule, computed from whole days and partial edge days instead of sampling.
+     * Offset changes are found once for all rules (TSCompiledRule.offsetBounds()), so cost is
+     * O(weeks in range + rule count * (offset changes + 1))
+     *
+     * @param from Range start in epoch milliseconds (included)
+     * @param to Range end in epoch milliseconds (excluded)
+     * @return long[] Matching milliseconds indexed by rule id
+     */
+    public long[] getTimeSpent(long from, long to) {
+        TSRuleTable table = this.table;
+        long[] spent = new long[this.rules.length];
+        long[] bounds = TSCompiledRule.offsetBounds(from, to, this.timeZone);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int offset = this.timeZone.getOffset(bounds[i]);
+            for (int id = 0; id < spent.length; id++) {
+                int start = table.startOffsets[id];
+                int end = table.endOffsets[id];
+                spent[id] += TSCompiledRule.spentBefore(start, end, bounds[i + 1] + offset) - TSCompiledRule.spentBefore(start, end, bounds[i] + offset);
+            }
+        }
+        return spent;
+    }
+
+    /***
+     * Helper method to find instant where local wall clock reads local time, or first instant after the offset change
+     * when local time is skipped
+     * @param local local wall clock milliseconds
+     * @param hint instant near local time, used for first offset guess
+     * @return instant in epoch milliseconds
+     */
+    private long instantOf(long local, long hint) {
+        long guess = local - this.timeZone.getOffset(hint);
+        long time = local - this.timeZone.getOffset(guess);
+        if (TSCompiledRule.localTime(time, this.timeZone) == local) return time;
+
+        long other = local - this.timeZone.getOffset(time);
+        long[] bounds = TSCompiledRule.offsetBounds(Math.min(time, other), Math.max(time, other) + 1, this.timeZone);
+        return bounds.length > 2 ? bounds[1] : Math.max(time, other);
+    }
+
+    /***
+     * Helper method to get rule ids sorted by descending priority, then by id
+     * @return rule ids in priority order
+     */
+    private int[] getPriorityOrder() {
+        int[] order = this.priorityOrder;
+        if (order != null) return order;
+
+        long[] keys = new long[this.rules.length];
+        for (int id = 0; id < keys.length; id++) {
+            keys[id] = ((long) ~this.priorities[id] << 32) | id;
+        }
+        Arrays.sort(keys);
+        order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) order[i] = (int) keys[i];
+        this.priorityOrder = order;
+        return order;
+    }
+
+    /***
+     * Helper method to get highest priority rule id of every segment
+     * @param order rule ids in priority order
+     * @return rule id by segment, -1 for segment without rule
+     */
+    private int[] getSegmentFirst(int[] order) {
+        int[] first = this.segmentFirst;
+        if (first != null) return first;
+
+        TSRuleTable table = this.table;
+        int[] rank = new int[order.length];
+        for (int i = 0; i < order.length; i++) rank[order[i]] = i;
+        first = new int[table.boundaries.length];
+        for (int segment = 0; segment < first.length; segment++) {
+            int best = -1;
+            int base = segment * table.words;
+            for (int word = 0; word < table.words; word++) {
+                long bits = table.segmentBits[base + word];
+                while (bits != 0) {
+                    int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    if (best < 0 || rank[id] < rank[best]) best = id;
+                    bits &= bits - 1;
+                }
+            }
+            first[segment] = best;
+        }
+        this.segmentFirst = first;
+        return first;
+    }
+
+    /***
+     * Helper method to read priority of every rule, called while holding configuration lock
+     * @param configuration configuration keeping priorities
+     * @param rules rules in id order
+     * @return priority by rule id
+     */
+    private static int[] priorities(TSConfiguration configuration, TSRule[] rules) {
+        int[] priorities = new int[rules.length];
+        for (int id = 0; id < rules.length; id++) priorities[id] = configuration.getPriority(rules[id]);
+        return priorities;
+    }
+
+    /***
+     * Helper method to wait for part computed on executor, rethrowing its failure on calling thread
+     * @param future part to wait for
+     * @return part result
+     */
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for parallel part", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Parallel part failed", e.getCause());
+        }
+    }
+}
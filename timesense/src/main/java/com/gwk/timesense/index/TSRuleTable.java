@@ -0,0 +1,512 @@
+package com.gwk.timesense.index;
+
+import com.gwk.timesense.rule.TSCompiledRule;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TimeZone;
+
+/***
+ * Compiled lookup data of a rule set, independent of TSRule objects so it can be shared.
+ * Tables are interned by content: configurations with the same rule offsets, time zone and resolution
+ * get the same table, even across TimeSense instances.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSRuleTable {
+
+    private static final HashMap<Key, Entry> tables = new HashMap<Key, Entry>();
+    private static final ReferenceQueue<TSRuleTable> released = new ReferenceQueue<TSRuleTable>();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    final TimeZone timeZone;
+    final int slotMillis;
+
+    final int[] startOffsets;
+    final int[] endOffsets;
+    final int words;
+
+    final int[] boundaries;
+    final long[] segmentBits;
+    final int[] slotSegments;
+
+    final int[] enterOffsets;
+    final int[] enterIds;
+    final int[] exitOffsets;
+    final int[] exitIds;
+
+    /***
+     * Get shared table for rule offsets, building it when no equal table is alive
+     *
+     * @param startOffsets Start time of each rule as millisecond of day, indexed by rule id
+     * @param endOffsets End time of each rule as millisecond of day, indexed by rule id
+     * @param timeZone Time zone used to read detected times
+     * @param slotMillis Slot resolution in milliseconds
+     * @return TSRuleTable
+     */
+    public static TSRuleTable obtain(int[] startOffsets, int[] endOffsets, TimeZone timeZone, int slotMillis) {
+        if (slotMillis <= 0) throw new IllegalArgumentException("Slot resolution should be positive");
+
+        startOffsets = startOffsets.clone();
+        endOffsets = endOffsets.clone();
+        Key key = new Key(startOffsets, endOffsets, timeZone, slotMillis);
+        synchronized (tables) {
+            Entry entry;
+            while ((entry = (Entry) released.poll()) != null) {
+                if (tables.get(entry.key) == entry) tables.remove(entry.key);
+            }
+            entry = tables.get(key);
+            TSRuleTable table = entry == null ? null : entry.get();
+            if (table != null) return table;
+        }
+
+        return intern(key, new TSRuleTable(startOffsets, endOffsets, timeZone, slotMillis));
+    }
+
+    /***
+     * Read table written by write(), sharing equal table if one is alive.
+     * Arrays are bulk copied from buffer (one memory copy each), no lookup data is rebuilt but it is checked
+     * in one pass against rule offsets before the table is shared
+     *
+     * @param buffer Buffer positioned at table data, position is moved after table data
+     * @return TSRuleTable, or null if time zone of table is not known on this system
+     * @throws IOException if table data is truncated or does not match rule offsets
+     */
+    public static TSRuleTable read(ByteBuffer buffer) throws IOException {
+        TSRuleTable table;
+        try {
+            byte[] zoneId = new byte[readLength(buffer, 1)];
+            buffer.get(zoneId);
+            String timeZoneId = new String(zoneId, UTF_8);
+            int slotMillis = buffer.getInt();
+            int[] startOffsets = readInts(buffer);
+            int[] endOffsets = readInts(buffer);
+            int[] boundaries = readInts(buffer);
+            long[] segmentBits = readLongs(buffer);
+            int[] slotSegments = readInts(buffer);
+            int[] enterOffsets = readInts(buffer);
+            int[] enterIds = readInts(buffer);
+            int[] exitOffsets = readInts(buffer);
+            int[] exitIds = readInts(buffer);
+
+            TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+            if (!timeZone.getID().equals(timeZoneId)) return null;
+
+            table = new TSRuleTable(timeZone, slotMillis, startOffsets, endOffsets, boundaries, segmentBits, slotSegments, enterOffsets, enterIds, exitOffsets, exitIds);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated rule table", e);
+        }
+        if (!table.isConsistent()) throw new IOException("Corrupted rule table");
+
+        return intern(new Key(table.startOffsets, table.endOffsets, table.timeZone, table.slotMillis), table);
+    }
+
+    /***
+     * Helper method to put table in cache unless an equal table was put first
+     * @param key content key of table
+     * @param table new table
+     * @return table in cache
+     */
+    private static TSRuleTable intern(Key key, TSRuleTable table) {
+        synchronized (tables) {
+            Entry entry = tables.get(key);
+            TSRuleTable existing = entry == null ? null : entry.get();
+            if (existing != null) return existing;
+            tables.put(key, new Entry(key, table));
+        }
+        return table;
+    }
+
+    /***
+     * Constructor.
+     *
+     * @param startOffsets Start time of each rule as millisecond of day
+     * @param endOffsets End time of each rule as millisecond of day
+     * @param timeZone Time zone used to read detected times
+     * @param slotMillis Slot resolution in milliseconds
+     */
+    private TSRuleTable(int[] startOffsets, int[] endOffsets, TimeZone timeZone, int slotMillis) {
+        this.timeZone = timeZone;
+        this.slotMillis = slotMillis;
+        this.startOffsets = startOffsets;
+        this.endOffsets = endOffsets;
+
+        int count = startOffsets.length;
+        this.words = (count + 63) >>> 6;
+
+        int[] points = new int[count * 2 + 1];
+        for (int id = 0; id < count; id++) {
+            points[id * 2] = startOffsets[id];
+            points[id * 2 + 1] = endOffsets[id];
+        }
+        this.boundaries = unique(points);
+
+        int segments = this.boundaries.length;
+        if ((long) segments * this.words <= TSRuleIndex.MAX_SEGMENT_WORDS) {
+            this.segmentBits = new long[segments * this.words];
+            for (int id = 0; id < count; id++) {
+                int start = startOffsets[id];
+                int end = endOffsets[id];
+                if (start <= end) {
+                    this.mark(id, this.segmentAt(start), this.segmentAt(end));
+                } else {
+                    this.mark(id, this.segmentAt(start), segments);
+                    this.mark(id, 0, this.segmentAt(end));
+                }
+            }
+        } else {
+            this.segmentBits = null;
+        }
+
+        this.enterOffsets = new int[segments + 1];
+        this.exitOffsets = new int[segments + 1];
+        for (int id = 0; id < count; id++) {
+            if (startOffsets[id] == endOffsets[id]) continue;
+            this.enterOffsets[this.segmentAt(startOffsets[id]) + 1]++;
+            this.exitOffsets[this.segmentAt(endOffsets[id]) + 1]++;
+        }
+        for (int segment = 0; segment < segments; segment++) {
+            this.enterOffsets[segment + 1] += this.enterOffsets[segment];
+            this.exitOffsets[segment + 1] += this.exitOffsets[segment];
+        }
+        this.enterIds = new int[this.enterOffsets[segments]];
+        this.exitIds = new int[this.exitOffsets[segments]];
+        int[] enterFill = Arrays.copyOf(this.enterOffsets, segments);
+        int[] exitFill = Arrays.copyOf(this.exitOffsets, segments);
+        for (int id = 0; id < count; id++) {
+            if (startOffsets[id] == endOffsets[id]) continue;
+            this.enterIds[enterFill[this.segmentAt(startOffsets[id])]++] = id;
+            this.exitIds[exitFill[this.segmentAt(endOffsets[id])]++] = id;
+        }
+
+        int slots = (int) ((TSCompiledRule.DAY_MILLIS + slotMillis - 1) / slotMillis);
+        this.slotSegments = new int[slots];
+        int segment = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            long slotStart = (long) slot * slotMillis;
+            while (segment + 1 < segments && this.boundaries[segment + 1] <= slotStart) segment++;
+            this.slotSegments[slot] = segment;
+        }
+    }
+
+    /***
+     * Constructor from lookup data read by read().
+     */
+    private TSRuleTable(TimeZone timeZone, int slotMillis, int[] startOffsets, int[] endOffsets, int[] boundaries, long[] segmentBits,
+                        int[] slotSegments, int[] enterOffsets, int[] enterIds, int[] exitOffsets, int[] exitIds) {
+        this.timeZone = timeZone;
+        this.slotMillis = slotMillis;
+        this.startOffsets = startOffsets;
+        this.endOffsets = endOffsets;
+        this.words = (startOffsets.length + 63) >>> 6;
+        this.boundaries = boundaries;
+        this.segmentBits = segmentBits;
+        this.slotSegments = slotSegments;
+        this.enterOffsets = enterOffsets;
+        this.enterIds = enterIds;
+        this.exitOffsets = exitOffsets;
+        this.exitIds = exitIds;
+    }
+
+    /***
+     * Helper method to check lookup data read by read() is the lookup data built from its rule offsets
+     * @return whether every array has the expected size and content
+     */
+    private boolean isConsistent() {
+        int count = this.startOffsets.length;
+        if (this.slotMillis <= 0 || this.endOffsets.length != count) return false;
+        int[] points = new int[count * 2 + 1];
+        for (int id = 0; id < count; id++) {
+            if (this.startOffsets[id] < 0 || this.startOffsets[id] >= TSCompiledRule.DAY_MILLIS) return false;
+            if (this.endOffsets[id] < 0 || this.endOffsets[id] >= TSCompiledRule.DAY_MILLIS) return false;
+            points[id * 2] = this.startOffsets[id];
+            points[id * 2 + 1] = this.endOffsets[id];
+        }
+        if (!Arrays.equals(this.boundaries, unique(points))) return false;
+
+        int segments = this.boundaries.length;
+        int slots = (int) ((TSCompiledRule.DAY_MILLIS + this.slotMillis - 1) / this.slotMillis);
+        if (this.slotSegments.length != slots) return false;
+        int segment = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            long slotStart = (long) slot * this.slotMillis;
+            while (segment + 1 < segments && this.boundaries[segment + 1] <= slotStart) segment++;
+            if (this.slotSegments[slot] != segment) return false;
+        }
+
+        if (!this.isTransitionList(this.enterOffsets, this.enterIds, this.startOffsets)) return false;
+        if (!this.isTransitionList(this.exitOffsets, this.exitIds, this.endOffsets)) return false;
+
+        if (this.segmentBits == null) return (long) segments * this.words > TSRuleIndex.MAX_SEGMENT_WORDS;
+        if (this.segmentBits.length != (long) segments * this.words) return false;
+        long[] active = new long[this.words];
+        this.scan(0, active, 0, 0, this.words);
+        for (segment = 0; segment < segments; segment++) {
+            if (segment > 0) {
+                for (int i = this.exitOffsets[segment]; i < this.exitOffsets[segment + 1]; i++) active[this.exitIds[i] >>> 6] &= ~(1L << this.exitIds[i]);
+                for (int i = this.enterOffsets[segment]; i < this.enterOffsets[segment + 1]; i++) active[this.enterIds[i] >>> 6] |= 1L << this.enterIds[i];
+            }
+            for (int word = 0; word < this.words; word++) {
+                if (this.segmentBits[segment * this.words + word] != active[word]) return false;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Helper method to check rules entering or exiting at each segment
+     * @param offsets position of first rule of each segment in ids, then number of ids
+     * @param ids rule ids grouped by segment
+     * @param times time of day where each rule enters or exits
+     * @return whether every rule with duration is listed once, at the segment starting at its time
+     */
+    private boolean isTransitionList(int[] offsets, int[] ids, int[] times) {
+        int segments = this.boundaries.length;
+        if (offsets.length != segments + 1 || offsets[0] != 0 || offsets[segments] != ids.length) return false;
+        for (int segment = 0; segment < segments; segment++) {
+            if (offsets[segment + 1] < offsets[segment]) return false;
+        }
+        boolean[] isListed = new boolean[times.length];
+        for (int segment = 0; segment < segments; segment++) {
+            for (int i = offsets[segment]; i < offsets[segment + 1]; i++) {
+                int id = ids[i];
+                if (id < 0 || id >= times.length || isListed[id]) return false;
+                if (times[id] != this.boundaries[segment] || this.startOffsets[id] == this.endOffsets[id]) return false;
+                isListed[id] = true;
+            }
+        }
+        for (int id = 0; id < times.length; id++) {
+            if (!isListed[id] && this.startOffsets[id] != this.endOffsets[id]) return false;
+        }
+        return true;
+    }
+
+    /***
+     * Write lookup data, to be read by read()
+     *
+     * @param output Output to write to
+     * @throws IOException if output fails
+     */
+    public void write(DataOutput output) throws IOException {
+        byte[] zoneId = this.timeZone.getID().getBytes(UTF_8);
+        output.writeInt(zoneId.length);
+        output.write(zoneId);
+        output.writeInt(this.slotMillis);
+        writeInts(output, this.startOffsets);
+        writeInts(output, this.endOffsets);
+        writeInts(output, this.boundaries);
+        if (this.segmentBits == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(this.segmentBits.length);
+            for (long bits: this.segmentBits) output.writeLong(bits);
+        }
+        writeInts(output, this.slotSegments);
+        writeInts(output, this.enterOffsets);
+        writeInts(output, this.enterIds);
+        writeInts(output, this.exitOffsets);
+        writeInts(output, this.exitIds);
+    }
+
+    /***
+     * @return int Number of rules in table
+     */
+    public int getRuleCount() {
+        return startOffsets.length;
+    }
+
+    /***
+     * Find segment containing time of day using slot table
+     *
+     * @param timeOfDay Millisecond of day
+     * @return int Segment index
+     */
+    int segmentOf(int timeOfDay) {
+        int segment = this.slotSegments[timeOfDay / this.slotMillis];
+        int last = this.boundaries.length - 1;
+        while (segment < last && this.boundaries[segment + 1] <= timeOfDay) segment++;
+        return segment;
+    }
+
+    /***
+     * Fill bitset with ids of rules active at time of day
+     *
+     * @param timeOfDay Millisecond of day
+     * @param bits Bitset to be filled
+     * @param offset Position of bitset in bits array
+     */
+    void detect(int timeOfDay, long[] bits, int offset) {
+        if (this.segmentBits != null) {
+            System.arraycopy(this.segmentBits, this.segmentOf(timeOfDay) * this.words, bits, offset, this.words);
+            return;
+        }
+        this.scan(timeOfDay, bits, offset, 0, this.words);
+    }
+
+    /***
+     * Fill words of bitset with ids of rules active at time of day, comparing rule offsets one by one.
+     * Only words from fromWord to toWord are written, so scans of distinct word ranges can share one bitset.
+     *
+     * @param timeOfDay Millisecond of day
+     * @param bits Bitset to be filled
+     * @param offset Position of bitset in bits array
+     * @param fromWord First word (included)
+     * @param toWord Last word (excluded)
+     */
+    void scan(int timeOfDay, long[] bits, int offset, int fromWord, int toWord) {
+        int[] startOffsets = this.startOffsets;
+        int[] endOffsets = this.endOffsets;
+        for (int word = fromWord; word < toWord; word++) {
+            long value = 0L;
+            int to = Math.min((word + 1) << 6, startOffsets.length);
+            for (int id = word << 6; id < to; id++) {
+                if (TSCompiledRule.contains(startOffsets[id], endOffsets[id], timeOfDay)) value |= 1L << id;
+            }
+            bits[offset + word] = value;
+        }
+    }
+
+    /***
+     * Helper method to set rule bit in segments
+     * @param id rule id
+     * @param from first segment (included)
+     * @param to last segment (excluded)
+     */
+    private void mark(int id, int from, int to) {
+        int word = id >>> 6;
+        long bit = 1L << id;
+        for (int segment = from; segment < to; segment++) {
+            this.segmentBits[segment * this.words + word] |= bit;
+        }
+    }
+
+    /***
+     * Helper method to find segment starting exactly at boundary
+     * @param boundary to be searched
+     * @return segment index, or segment count for end of day
+     */
+    private int segmentAt(int boundary) {
+        int index = Arrays.binarySearch(this.boundaries, boundary);
+        return index < 0 ? this.boundaries.length : index;
+    }
+
+    /***
+     * Helper method to sort boundaries and drop duplicates, keeping start of day as first boundary
+     * @param points boundaries with start of day in last position
+     * @return sorted unique boundaries
+     */
+    private static int[] unique(int[] points) {
+        Arrays.sort(points);
+        int size = 0;
+        for (int i = 0; i < points.length; i++) {
+            if (size == 0 || points[size - 1] != points[i]) points[size++] = points[i];
+        }
+        return Arrays.copyOf(points, size);
+    }
+
+    /***
+     * Helper method to write length prefixed int array
+     * @param output output to write to
+     * @param values array to be written
+     * @throws IOException if output fails
+     */
+    private static void writeInts(DataOutput output, int[] values) throws IOException {
+        output.writeInt(values.length);
+        for (int value: values) output.writeInt(value);
+    }
+
+    /***
+     * Helper method to read array length, checked against remaining bytes before anything is allocated
+     * @param buffer buffer positioned at length
+     * @param size bytes of one element
+     * @return length
+     * @throws IOException if length is negative or longer than buffer
+     */
+    private static int readLength(ByteBuffer buffer, int size) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / size) throw new IOException("Corrupted rule table");
+        return length;
+    }
+
+    /***
+     * Helper method to bulk read length prefixed int array
+     * @param buffer buffer positioned at array
+     * @return array
+     * @throws IOException if length is invalid
+     */
+    private static int[] readInts(ByteBuffer buffer) throws IOException {
+        int[] values = new int[readLength(buffer, 4)];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 4);
+        return values;
+    }
+
+    /***
+     * Helper method to bulk read length prefixed long array
+     * @param buffer buffer positioned at array
+     * @return array, or null if length is -1
+     * @throws IOException if length is invalid
+     */
+    private static long[] readLongs(ByteBuffer buffer) throws IOException {
+        int position = buffer.position();
+        if (buffer.getInt() == -1) return null;
+        buffer.position(position);
+        long[] values = new long[readLength(buffer, 8)];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 8);
+        return values;
+    }
+
+    /***
+     * Content key of a table.
+     */
+    private static class Key {
+        private final int[] startOffsets;
+        private final int[] endOffsets;
+        private final TimeZone timeZone;
+        private final int slotMillis;
+        private final int hash;
+
+        private Key(int[] startOffsets, int[] endOffsets, TimeZone timeZone, int slotMillis) {
+            this.startOffsets = startOffsets;
+            this.endOffsets = endOffsets;
+            this.timeZone = timeZone;
+            this.slotMillis = slotMillis;
+            this.hash = ((Arrays.hashCode(startOffsets) * 31 + Arrays.hashCode(endOffsets)) * 31 + timeZone.getID().hashCode()) * 31 + slotMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key param = (Key) obj;
+            return this.hash == param.hash && this.slotMillis == param.slotMillis
+                    && Arrays.equals(this.startOffsets, param.startOffsets) && Arrays.equals(this.endOffsets, param.endOffsets)
+                    && this.timeZone.getID().equals(param.timeZone.getID()) && this.timeZone.hasSameRules(param.timeZone);
+        }
+    }
+
+    /***
+     * Weak cache entry, removed once its table is collected.
+     */
+    private static class Entry extends WeakReference<TSRuleTable> {
+        private final Key key;
+
+        private Entry(Key key, TSRuleTable table) {
+            super(table, released);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.gwk.timesense.index;
+
+import com.gwk.timesense.listener.TSTransitionListener;
+import com.gwk.timesense.rule.TSCompiledRule;
+
+/***
+ * Streaming classifier for time ordered events.
+ * Keeps a cursor on the current segment of TSRuleIndex and only does work when an event crosses a rule boundary,
+ * calling listener with rules entered and exited at that event.
+ * Events going back in time or skipping more than a day are accepted too, the cursor is then relocated.
+ * Not thread safe, use one classifier per stream.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSStreamClassifier {
+
+    private final TSRuleIndex index;
+    private final TSTransitionListener listener;
+    private final long[] active;
+    private final long[] scratch;
+
+    private boolean started;
+    private int segment;
+    private long segmentStart;
+    private long segmentEnd;
+
+    /***
+     * Constructor.
+     *
+     * @param index Lookup table used for classification
+     * @param listener Listener called on every rule transition
+     */
+    public TSStreamClassifier(TSRuleIndex index, TSTransitionListener listener) {
+        this.index = index;
+        this.listener = listener;
+        this.active = new long[index.getWords()];
+        this.scratch = new long[index.getWords()];
+    }
+
+    /***
+     * @return TSRuleIndex Getter for index property
+     */
+    public TSRuleIndex getIndex() {
+        return index;
+    }
+
+    /***
+     * @param ruleId Rule id (rule position in configuration)
+     * @return Whether rule is active at last accepted event
+     */
+    public boolean isActive(int ruleId) {
+        return (this.active[ruleId >>> 6] & (1L << ruleId)) != 0;
+    }
+
+    /***
+     * Forget cursor, next event enters every rule active at its time
+     */
+    public void reset() {
+        this.started = false;
+        for (int word = 0; word < this.active.length; word++) this.active[word] = 0L;
+    }
+
+    /***
+     * Classify next event of the stream
+     *
+     * @param epochMillis Event time
+     */
+    public void accept(long epochMillis) {
+        long local = TSCompiledRule.localTime(epochMillis, this.index.getTimeZone());
+        if (this.started && local >= this.segmentStart && local < this.segmentEnd) return;
+
+        if (this.started && local >= this.segmentEnd && local - this.segmentEnd < TSCompiledRule.DAY_MILLIS) {
+            int segments = this.index.getSegmentCount();
+            while (local >= this.segmentEnd) {
+                this.segmentStart = this.segmentEnd;
+                this.segment = this.segment + 1 == segments ? 0 : this.segment + 1;
+                this.segmentEnd = this.segmentStart + this.index.getSegmentEnd(this.segment) - this.index.getSegmentStart(this.segment);
+                this.cross(this.segment, epochMillis);
+            }
+            return;
+        }
+
+        this.relocate(local, epochMillis);
+    }
+
+    /***
+     * Classify events of the stream in order
+     *
+     * @param times Event times
+     */
+    public void accept(long[] times) {
+        for (int i = 0; i < times.length; i++) {
+            this.accept(times[i]);
+        }
+    }
+
+    /***
+     * Helper method to apply rules exiting and entering at segment start
+     * @param segment entered segment
+     * @param time event time reported to listener
+     */
+    private void cross(int segment, long time) {
+        TSRuleIndex index = this.index;
+        TSRuleTable table = index.getTable();
+        for (int i = table.exitOffsets[segment]; i < table.exitOffsets[segment + 1]; i++) {
+            int id = table.exitIds[i];
+            this.active[id >>> 6] &= ~(1L << id);
+            this.listener.timeSenseExited(index.getRule(id), time);
+        }
+        for (int i = table.enterOffsets[segment]; i < table.enterOffsets[segment + 1]; i++) {
+            int id = table.enterIds[i];
+            this.active[id >>> 6] |= 1L << id;
+            this.listener.timeSenseEntered(index.getRule(id), time);
+        }
+    }
+
+    /***
+     * Helper method to move cursor to any time, reporting the difference with previous active rules
+     * @param local event time in local wall clock milliseconds
+     * @param time event time reported to listener
+     */
+    private void relocate(long local, long time) {
+        long timeOfDay = local % TSCompiledRule.DAY_MILLIS;
+        if (timeOfDay < 0) timeOfDay += TSCompiledRule.DAY_MILLIS;
+        long dayStart = local - timeOfDay;
+
+        this.segment = this.index.segmentOf((int) timeOfDay);
+        this.segmentStart = dayStart + this.index.getSegmentStart(this.segment);
+        this.segmentEnd = dayStart + this.index.getSegmentEnd(this.segment);
+        this.started = true;
+
+        this.index.detect(time, this.scratch, 0);
+        for (int word = 0; word < this.active.length; word++) {
+            long exited = this.active[word] & ~this.scratch[word];
+            while (exited != 0) {
+                this.listener.timeSenseExited(this.index.getRule((word << 6) + Long.numberOfTrailingZeros(exited)), time);
+                exited &= exited - 1;
+            }
+        }
+        for (int word = 0; word < this.active.length; word++) {
+            long entered = this.scratch[word] & ~this.active[word];
+            while (entered != 0) {
+                this.listener.timeSenseEntered(this.index.getRule((word << 6) + Long.numberOfTrailingZeros(entered)), time);
+                entered &= entered - 1;
+            }
+            this.active[word] = this.scratch[word];
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.gwk.timesense.index;
+
+import com.gwk.timesense.rule.TSRule;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/***
+ * Instant where at least one rule starts or ends.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSTransition {
+
+    private Date time;
+    private ArrayList<TSRule> enteredRules;
+    private ArrayList<TSRule> exitedRules;
+
+    /***
+     * Constructor.
+     *
+     * @param time instant of the transition
+     * @param enteredRules rules starting at time
+     * @param exitedRules rules ending at time
+     */
+    public TSTransition(Date time, ArrayList<TSRule> enteredRules, ArrayList<TSRule> exitedRules) {
+        this.time = time;
+        this.enteredRules = enteredRules;
+        this.exitedRules = exitedRules;
+    }
+
+    /***
+     * @return Date Getter for time property
+     */
+    public Date getTime() {
+        return time;
+    }
+
+    /***
+     * @return ArrayList<TSRule> Getter for entered rules property
+     */
+    public ArrayList<TSRule> getEnteredRules() {
+        return enteredRules;
+    }
+
+    /***
+     * @return ArrayList<TSRule> Getter for exited rules property
+     */
+    public ArrayList<TSRule> getExitedRules() {
+        return exitedRules;
+    }
+}
@@ -0,0 +1,226 @@
+package com.gwk.timesense.io;
+
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.index.TSRuleIndex;
+import com.gwk.timesense.index.TSRuleTable;
+import com.gwk.timesense.rule.TSRule;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/***
+ * Compact binary file of a TSConfiguration, optionally with its lookup table (TSRuleTable), loaded through a memory mapped file.
+ * Loading creates the rules in one pass and attaches the stored lookup table, instead of adding rules one by one and rebuilding the index.
+ *
+ * Layout (big endian): magic "TSCF", format version, rule count, flags,
+ * then start time, end time (epoch milliseconds), UTF-8 name and attributes of every rule, then lookup table when FLAG_INDEX is set.
+ * Version 1 files (without rule attributes) are still read.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSConfigurationFile {
+
+    public static final int MAGIC = 0x54534346;
+    public static final int VERSION = 2;
+    public static final int FLAG_INDEX = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MIN_RULE_BYTES = 20;
+
+    private final TSConfiguration configuration;
+    private final TSRuleIndex index;
+
+    /***
+     * Constructor.
+     *
+     * @param configuration Loaded configuration
+     * @param index Loaded index, may be null
+     */
+    private TSConfigurationFile(TSConfiguration configuration, TSRuleIndex index) {
+        this.configuration = configuration;
+        this.index = index;
+    }
+
+    /***
+     * @return TSConfiguration Getter for configuration property
+     */
+    public TSConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /***
+     * @return TSRuleIndex Index attached to configuration, or null if file has no index or its time zone is not known on this system
+     */
+    public TSRuleIndex getIndex() {
+        return index;
+    }
+
+    /***
+     * Write rules of configuration
+     *
+     * @param file File to be written
+     * @param configuration Configuration to be written
+     * @throws IOException if file cannot be written
+     */
+    public static void write(File file, TSConfiguration configuration) throws IOException {
+        ArrayList<TSRule> rules;
+        synchronized (configuration) {
+            rules = new ArrayList<TSRule>(configuration.getRules());
+        }
+        write(file, rules, null);
+    }
+
+    /***
+     * Write rules of configuration with lookup table, so loading does not need to build the index
+     *
+     * @param file File to be written
+     * @param configuration Configuration to be written
+     * @param timeZone Time zone of lookup table, TimeSense.getTimeZone() of the engine loading the file
+     * @param slotMillis Slot resolution of lookup table, TimeSense.getIndexResolution() of the engine loading the file
+     * @throws IOException if file cannot be written
+     */
+    public static void write(File file, TSConfiguration configuration, TimeZone timeZone, int slotMillis) throws IOException {
+        TSRuleIndex index = new TSRuleIndex(configuration, timeZone, slotMillis);
+        ArrayList<TSRule> rules = new ArrayList<TSRule>(index.getRuleCount());
+        for (int id = 0; id < index.getRuleCount(); id++) {
+            rules.add(index.getRule(id));
+        }
+        write(file, rules, index.getTable());
+    }
+
+    /***
+     * Load configuration file
+     *
+     * @param file File to be loaded
+     * @return TSConfigurationFile with loaded configuration and index
+     * @throws IOException if file cannot be read, is not a configuration file, or has newer format version
+     */
+    public static TSConfigurationFile read(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } finally {
+            input.close();
+        }
+    }
+
+    /***
+     * Load configuration from buffer holding configuration file
+     *
+     * @param buffer Buffer positioned at start of configuration file
+     * @return TSConfigurationFile with loaded configuration and index
+     * @throws IOException if buffer is not a configuration file, has newer format version, or is truncated or corrupted
+     */
+    public static TSConfigurationFile read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a TimeSense configuration file");
+            int version = buffer.getInt();
+            if (version > VERSION) throw new IOException("Unsupported configuration file version " + version);
+            int count = buffer.getInt();
+            int flags = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / MIN_RULE_BYTES) throw new IOException("Corrupted configuration file");
+
+            ArrayList<TSRule> rules = new ArrayList<TSRule>(count);
+            for (int id = 0; id < count; id++) {
+                long startTime = buffer.getLong();
+                long endTime = buffer.getLong();
+                TSRule rule = new TSRule(readString(buffer), new Date(startTime), new Date(endTime));
+                if (version >= 2) {
+                    for (int attributeCount = buffer.getInt(); attributeCount > 0; attributeCount--) {
+                        rule.setAttribute(readString(buffer), readString(buffer));
+                    }
+                }
+                rules.add(rule);
+            }
+            TSConfiguration configuration = new TSConfiguration();
+            configuration.setRules(rules);
+
+            TSRuleIndex index = null;
+            if ((flags & FLAG_INDEX) != 0) {
+                TSRuleTable table = TSRuleTable.read(buffer);
+                if (table != null) index = new TSRuleIndex(configuration, table);
+            }
+            return new TSConfigurationFile(configuration, index);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated configuration file", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted configuration file", e);
+        } catch (NegativeArraySizeException e) {
+            throw new IOException("Corrupted configuration file", e);
+        }
+    }
+
+    /***
+     * Helper method to write file
+     * @param file file to be written
+     * @param rules rules to be written
+     * @param table lookup table of rules, may be null
+     * @throws IOException if file cannot be written
+     */
+    private static void write(File file, ArrayList<TSRule> rules, TSRuleTable table) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(rules.size());
+            output.writeInt(table == null ? 0 : FLAG_INDEX);
+            for (TSRule rule: rules) {
+                output.writeLong(rule.getStartTime().getTime());
+                output.writeLong(rule.getEndTime().getTime());
+                writeString(output, rule.getName());
+                HashMap<String, String> attributes = rule.getAttributes();
+                output.writeInt(attributes.size());
+                for (Map.Entry<String, String> attribute: attributes.entrySet()) {
+                    writeString(output, attribute.getKey());
+                    writeString(output, attribute.getValue());
+                }
+            }
+            if (table != null) table.write(output);
+        } finally {
+            output.close();
+        }
+    }
+
+    /***
+     * Helper method to write length prefixed UTF-8 string
+     * @param output output to write to
+     * @param value string to be written
+     * @throws IOException if output fails
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /***
+     * Helper method to read length prefixed UTF-8 string
+     * @param buffer buffer positioned at string
+     * @return string
+     * @throws IOException if length is negative or longer than buffer
+     */
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Corrupted configuration file");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
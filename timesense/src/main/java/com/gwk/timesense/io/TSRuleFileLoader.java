@@ -0,0 +1,315 @@
+package com.gwk.timesense.io;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.index.TSRuleIndex;
+import com.gwk.timesense.rule.TSRule;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Loader of text rule file into TimeSense, reloading the file when it changes.
+ *
+ * Every line of rule file is a rule: name, start time and end time (HH:mm or HH:mm:ss) separated by spaces,
+ * followed by any number of key=value attributes. Empty lines and lines starting with # are ignored.
+ * <pre>
+ * # name        start  end    attributes
+ * MORNING       04:00  11:00
+ * LUNCH_BREAK   12:00  13:00  priority=2
+ * </pre>
+ * Attribute priority (TSRule.ATTRIBUTE_PRIORITY) should be a number.
+ *
+ * The new configuration and its index are built on the loader thread, then swapped into TimeSense at once,
+ * so detection never sees a partly loaded rule set. A file that fails to parse keeps the previous configuration.
+ * Changes are noticed by file length and CRC32 checksum of file content rather than modification time, so a write of
+ * the same size within modification time granularity is not missed.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSRuleFileLoader {
+
+    public static final long DEFAULT_POLL_MILLIS = 5000;
+
+    private final File file;
+    private final TimeSense timeSense;
+
+    private ScheduledExecutorService executor;
+    private long lastLength;
+    private long lastChecksum;
+    private volatile IOException lastError;
+    private volatile int reloadCount;
+
+    /***
+     * Constructor.
+     *
+     * @param file Rule file to be loaded
+     * @param timeSense TimeSense receiving loaded configuration
+     */
+    public TSRuleFileLoader(File file, TimeSense timeSense) {
+        this.file = file;
+        this.timeSense = timeSense;
+        this.lastLength = -1;
+        this.lastChecksum = -1;
+    }
+
+    /***
+     * @return File Getter for file property
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /***
+     * @return IOException Error of last failed load, or null if last load succeeded
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /***
+     * @return int Number of successful loads
+     */
+    public int getReloadCount() {
+        return reloadCount;
+    }
+
+    /***
+     * Load file now and watch it for changes every DEFAULT_POLL_MILLIS
+     */
+    public void start() {
+        this.start(DEFAULT_POLL_MILLIS);
+    }
+
+    /***
+     * Load file on loader thread and watch it for changes
+     *
+     * @param pollMillis Interval between file checks in milliseconds
+     */
+    public synchronized void start(long pollMillis) {
+        if (this.executor != null) return;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TSRuleFileLoader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                TSRuleFileLoader.this.reloadIfChanged();
+            }
+        }, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /***
+     * Stop watching file
+     */
+    public synchronized void stop() {
+        if (this.executor == null) return;
+        this.executor.shutdownNow();
+        this.executor = null;
+    }
+
+    /***
+     * Load file if its length or content checksum changed since last load. Rule files are small, so file is read on
+     * every check and the same content is parsed into the new configuration
+     *
+     * @return Whether file was loaded into TimeSense
+     */
+    public synchronized boolean reloadIfChanged() {
+        byte[] content;
+        try {
+            content = read(this.file);
+        } catch (IOException e) {
+            this.lastError = e;
+            return false;
+        }
+        if (content.length == this.lastLength && checksum(content) == this.lastChecksum) return false;
+        return this.reload(content);
+    }
+
+    /***
+     * Load file into TimeSense, keeping previous configuration if file cannot be read
+     *
+     * @return Whether file was loaded into TimeSense
+     */
+    public synchronized boolean reload() {
+        try {
+            return this.reload(read(this.file));
+        } catch (IOException e) {
+            this.lastError = e;
+            return false;
+        }
+    }
+
+    /***
+     * Helper method to load file content into TimeSense, remembering content even if it fails to parse so it is not
+     * parsed again until it changes
+     * @param content file content
+     * @return whether content was loaded into TimeSense
+     */
+    private boolean reload(byte[] content) {
+        this.lastLength = content.length;
+        this.lastChecksum = checksum(content);
+        try {
+            TimeZone timeZone = this.timeSense.getTimeZone();
+            Reader reader = new InputStreamReader(new ByteArrayInputStream(content), "UTF-8");
+            TSConfiguration configuration = parse(reader, timeZone);
+            TSRuleIndex index = new TSRuleIndex(configuration, timeZone, this.timeSense.getIndexResolution());
+            this.timeSense.setConfiguration(configuration, index);
+            this.lastError = null;
+            this.reloadCount++;
+            return true;
+        } catch (IOException e) {
+            this.lastError = e;
+            return false;
+        }
+    }
+
+    /***
+     * Read rule file
+     *
+     * @param file Rule file
+     * @param timeZone Time zone of rule times
+     * @return TSConfiguration with rules in file
+     * @throws IOException if file cannot be read or has invalid line
+     */
+    public static TSConfiguration load(File file, TimeZone timeZone) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            return parse(reader, timeZone);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /***
+     * Helper method to read whole file
+     * @param file file to be read
+     * @return file content
+     * @throws IOException if file cannot be read
+     */
+    private static byte[] read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream((int) Math.max(file.length(), 32));
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /***
+     * Helper method to compute CRC32 of file content
+     * @param content file content
+     * @return checksum, never negative
+     */
+    private static long checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue();
+    }
+
+    /***
+     * Read rules line by line
+     *
+     * @param reader Rule file content
+     * @param timeZone Time zone of rule times
+     * @return TSConfiguration with rules in reader
+     * @throws IOException if reader fails or has invalid line
+     */
+    public static TSConfiguration parse(Reader reader, TimeZone timeZone) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        TSConfiguration.Builder builder = TSConfiguration.create();
+        Calendar calendar = Calendar.getInstance(timeZone);
+        int number = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] fields = line.split("\\s+");
+            if (fields.length < 3) throw new IOException("Rule should have name, start and end time at line " + number);
+            TSRule rule = new TSRule(fields[0], null, null);
+            rule.setStartTime(parseTime(calendar, fields[1], number));
+            rule.setEndTime(parseTime(calendar, fields[2], number));
+            for (int i = 3; i < fields.length; i++) {
+                int separator = fields[i].indexOf('=');
+                if (separator <= 0) throw new IOException("Attribute should be key=value at line " + number);
+                String key = fields[i].substring(0, separator);
+                String value = fields[i].substring(separator + 1);
+                if (key.equals(TSRule.ATTRIBUTE_PRIORITY)) parsePriority(value, number);
+                rule.setAttribute(key, value);
+            }
+            builder.addRule(rule);
+        }
+        return builder.done();
+    }
+
+    /***
+     * Helper method to read HH:mm or HH:mm:ss as time today
+     * @param calendar calendar in rule time zone
+     * @param text time to be read
+     * @param number line number for error message
+     * @return time
+     * @throws IOException if time is invalid
+     */
+    private static Date parseTime(Calendar calendar, String text, int number) throws IOException {
+        String[] parts = text.split(":");
+        try {
+            if (parts.length < 2 || parts.length > 3) throw new NumberFormatException(text);
+            int hour = Integer.parseInt(parts[0]);
+            int minute = Integer.parseInt(parts[1]);
+            int second = parts.length == 3 ? Integer.parseInt(parts[2]) : 0;
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) throw new NumberFormatException(text);
+
+            calendar.set(Calendar.HOUR_OF_DAY, hour);
+            calendar.set(Calendar.MINUTE, minute);
+            calendar.set(Calendar.SECOND, second);
+            calendar.set(Calendar.MILLISECOND, 0);
+            return calendar.getTime();
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid time " + text + " at line " + number, e);
+        }
+    }
+
+    /***
+     * Helper method to check priority attribute
+     * @param text priority to be read
+     * @param number line number for error message
+     * @return priority
+     * @throws IOException if priority is not a number
+     */
+    private static int parsePriority(String text, int number) throws IOException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid priority " + text + " at line " + number, e);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.gwk.timesense.listener;
+
+import com.gwk.timesense.metrics.TSMetrics;
+import com.gwk.timesense.rule.TSRule;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/***
+ * Listener wrapper that hands callbacks to an executor through its own bounded queue.
+ * Callbacks of one wrapper run one at a time in order, so a slow listener only backs up its own queue
+ * and never the trigger path or other listeners. Exceptions thrown by the wrapped listener are counted and skipped.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSAsyncListener implements TSListener, TSTransitionListener {
+
+    private static final int TRIGGERED = 0;
+    private static final int TRIGGERED_RULE = 1;
+    private static final int ENTERED = 2;
+    private static final int EXITED = 3;
+    private static final int TRIGGERED_ID = 4;
+
+    /***
+     * Wrapper for TSIndexedListener, keeping rule id callback.
+     */
+    private static class Indexed extends TSAsyncListener implements TSIndexedListener {
+        private Indexed(Object listener, Executor executor, int capacity, TSOverflowPolicy policy) {
+            super(listener, executor, capacity, policy);
+        }
+
+        @Override
+        public void timeSenseTriggered(int ruleId) {
+            this.offer(new Event(TRIGGERED_ID, null, null, 0, ruleId));
+        }
+    }
+
+    /***
+     * Pending callback.
+     */
+    private static class Event {
+        private final int type;
+        private final String ruleName;
+        private final TSRule rule;
+        private final long time;
+        private final int ruleId;
+
+        private Event(int type, String ruleName, TSRule rule, long time) {
+            this(type, ruleName, rule, time, -1);
+        }
+
+        private Event(int type, String ruleName, TSRule rule, long time, int ruleId) {
+            this.type = type;
+            this.ruleName = ruleName;
+            this.rule = rule;
+            this.time = time;
+            this.ruleId = ruleId;
+        }
+
+        private boolean supersedes(Event event) {
+            switch (this.type) {
+                case TRIGGERED: return event.type == TRIGGERED;
+                case TRIGGERED_RULE: return event.type == TRIGGERED_RULE && this.ruleName.equals(event.ruleName);
+                case TRIGGERED_ID: return event.type == TRIGGERED_ID && this.ruleId == event.ruleId;
+                default: return (event.type == ENTERED || event.type == EXITED) && this.rule == event.rule;
+            }
+        }
+    }
+
+    private final Object listener;
+    private final Executor executor;
+    private final int capacity;
+    private final TSOverflowPolicy policy;
+
+    private final ArrayDeque<Event> queue;
+    private final Runnable drain;
+    private volatile TSMetrics metrics;
+    private boolean isScheduled;
+    private Thread drainThread;
+    private long droppedCount;
+    private long failedCount;
+
+    /***
+     * Constructor.
+     *
+     * @param listener TSListener, TSTransitionListener, or both, to be called asynchronously
+     * @param executor Executor running the callbacks
+     * @param capacity Maximum pending callbacks
+     * @param policy What to do when queue is full
+     */
+    public TSAsyncListener(Object listener, Executor executor, int capacity, TSOverflowPolicy policy) {
+        if (!(listener instanceof TSListener) && !(listener instanceof TSTransitionListener)) throw new IllegalArgumentException("Listener should be TSListener or TSTransitionListener");
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity should be positive");
+
+        this.listener = listener;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new ArrayDeque<Event>(capacity);
+        this.drain = new Runnable() {
+            @Override
+            public void run() {
+                TSAsyncListener.this.drain();
+            }
+        };
+    }
+
+    /***
+     * Wrap listener, the wrapper also implements TSIndexedListener when listener does
+     *
+     * @param listener TSListener, TSTransitionListener, or both, to be called asynchronously
+     * @param executor Executor running the callbacks
+     * @param capacity Maximum pending callbacks
+     * @param policy What to do when queue is full
+     * @return TSAsyncListener
+     */
+    public static TSAsyncListener wrap(Object listener, Executor executor, int capacity, TSOverflowPolicy policy) {
+        if (listener instanceof TSIndexedListener) return new Indexed(listener, executor, capacity, policy);
+        return new TSAsyncListener(listener, executor, capacity, policy);
+    }
+
+    /***
+     * @return Object Getter for wrapped listener property
+     */
+    public Object getListener() {
+        return listener;
+    }
+
+    /***
+     * @return TSMetrics Getter for metrics property
+     */
+    public TSMetrics getMetrics() {
+        return metrics;
+    }
+
+    /***
+     * Report latency of every callback run on executor, keyed by wrapped listener.
+     * Nothing is measured while metrics is null (default)
+     *
+     * @param metrics Set metrics property with this value
+     */
+    public void setMetrics(TSMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /***
+     * @return long Number of callbacks dropped or merged because queue was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /***
+     * @return long Number of callbacks that threw an exception
+     */
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    /***
+     * @return int Number of callbacks waiting to run
+     */
+    public synchronized int getPendingCount() {
+        return queue.size();
+    }
+
+    @Override
+    public void timeSenseTriggered() {
+        if (this.listener instanceof TSListener) this.offer(new Event(TRIGGERED, null, null, 0));
+    }
+
+    @Override
+    public void timeSenseTriggered(String ruleName) {
+        if (this.listener instanceof TSListener) this.offer(new Event(TRIGGERED_RULE, ruleName, null, 0));
+    }
+
+    @Override
+    public void timeSenseEntered(TSRule rule, long time) {
+        if (this.listener instanceof TSTransitionListener) this.offer(new Event(ENTERED, null, rule, time));
+    }
+
+    @Override
+    public void timeSenseExited(TSRule rule, long time) {
+        if (this.listener instanceof TSTransitionListener) this.offer(new Event(EXITED, null, rule, time));
+    }
+
+    /***
+     * Helper method to queue callback, applying overflow policy, and schedule drain
+     * @param event callback to be queued
+     */
+    void offer(Event event) {
+        boolean isSchedule;
+        synchronized (this) {
+            if (this.queue.size() >= this.capacity) {
+                if (this.policy == TSOverflowPolicy.BLOCK && Thread.currentThread() != this.drainThread) {
+                    boolean isInterrupted = false;
+                    while (this.queue.size() >= this.capacity) {
+                        try {
+                            this.wait();
+                        } catch (InterruptedException e) {
+                            isInterrupted = true;
+                        }
+                    }
+                    if (isInterrupted) Thread.currentThread().interrupt();
+                } else if (this.policy == TSOverflowPolicy.COALESCE && this.coalesce(event)) {
+                    this.droppedCount++;
+                } else {
+                    this.queue.pollFirst();
+                    this.droppedCount++;
+                }
+            }
+            this.queue.addLast(event);
+            isSchedule = !this.isScheduled;
+            this.isScheduled = true;
+        }
+        if (isSchedule) this.executor.execute(this.drain);
+    }
+
+    /***
+     * Helper method to remove pending callback superseded by event, event is then queued at the tail
+     * so callbacks keep the order they happened in
+     * @param event new callback
+     * @return whether a pending callback was removed
+     */
+    private boolean coalesce(Event event) {
+        for (Iterator<Event> iterator = this.queue.iterator(); iterator.hasNext(); ) {
+            if (event.supersedes(iterator.next())) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /***
+     * Helper method to run pending callbacks in order until queue is empty.
+     * Draining thread is remembered, so a callback triggering this listener again drops the oldest callback instead of
+     * blocking on a queue only it can empty
+     */
+    private void drain() {
+        while (true) {
+            Event event;
+            synchronized (this) {
+                event = this.queue.pollFirst();
+                if (event == null) {
+                    this.isScheduled = false;
+                    this.drainThread = null;
+                    return;
+                }
+                this.drainThread = Thread.currentThread();
+                this.notifyAll();
+            }
+            TSMetrics metrics = this.metrics;
+            long start = metrics == null ? 0 : System.nanoTime();
+            try {
+                switch (event.type) {
+                    case TRIGGERED: ((TSListener) this.listener).timeSenseTriggered(); break;
+                    case TRIGGERED_RULE: ((TSListener) this.listener).timeSenseTriggered(event.ruleName); break;
+                    case TRIGGERED_ID: ((TSIndexedListener) this.listener).timeSenseTriggered(event.ruleId); break;
+                    case ENTERED: ((TSTransitionListener) this.listener).timeSenseEntered(event.rule, event.time); break;
+                    default: ((TSTransitionListener) this.listener).timeSenseExited(event.rule, event.time); break;
+                }
+                if (metrics != null) metrics.dispatched(this.listener, System.nanoTime() - start);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    this.failedCount++;
+                }
+            }
+        }
+    }
+}
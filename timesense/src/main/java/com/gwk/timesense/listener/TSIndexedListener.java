@@ -0,0 +1,13 @@
+package com.gwk.timesense.listener;
+
+/***
+ * Listener object for TimeSense that receives rule id (TSConfiguration.getRuleId()) instead of rule name.
+ * TimeSense calls timeSenseTriggered(ruleId) instead of timeSenseTriggered(ruleName) for this listener,
+ * so dispatch does no string hashing or comparison.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public interface TSIndexedListener extends TSListener {
+    public void timeSenseTriggered(int ruleId);
+}
@@ -0,0 +1,176 @@
+package com.gwk.timesense.listener;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * Immutable set of listeners registered in TimeSense.
+ * Every change returns a new registry so readers can use a published registry without locking.
+ * Arrays returned by getters are shared and should not be modified.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSListenerRegistry {
+
+    public static final TSListenerRegistry EMPTY = new TSListenerRegistry(new TSListener[0], new HashMap<String, TSListener[]>(), new TSTransitionListener[0]);
+
+    private final TSListener[] genericListeners;
+    private final HashMap<String, TSListener[]> specificListeners;
+    private final TSTransitionListener[] transitionListeners;
+
+    /***
+     * Constructor.
+     *
+     * @param genericListeners listeners for all rules
+     * @param specificListeners listeners for each rule name
+     * @param transitionListeners listeners for rule state changes
+     */
+    private TSListenerRegistry(TSListener[] genericListeners, HashMap<String, TSListener[]> specificListeners, TSTransitionListener[] transitionListeners) {
+        this.genericListeners = genericListeners;
+        this.specificListeners = specificListeners;
+        this.transitionListeners = transitionListeners;
+    }
+
+    /***
+     * @return TSListener[] Listeners for all rules
+     */
+    public TSListener[] getGenericListeners() {
+        return genericListeners;
+    }
+
+    /***
+     * @param ruleName Rule name identifier
+     * @return TSListener[] Listeners for rule name, or null if there is none
+     */
+    public TSListener[] getSpecificListeners(String ruleName) {
+        return specificListeners.get(ruleName);
+    }
+
+    /***
+     * @return TSTransitionListener[] Listeners for rule state changes
+     */
+    public TSTransitionListener[] getTransitionListeners() {
+        return transitionListeners;
+    }
+
+    /***
+     * @param listener Listener to be found, compared by identity
+     * @return Whether listener is registered for all rules, for any rule name, or for rule state changes
+     */
+    public boolean contains(Object listener) {
+        for (TSListener registered: this.genericListeners) {
+            if (registered == listener) return true;
+        }
+        for (TSListener[] listeners: this.specificListeners.values()) {
+            for (TSListener registered: listeners) {
+                if (registered == listener) return true;
+            }
+        }
+        for (TSTransitionListener registered: this.transitionListeners) {
+            if (registered == listener) return true;
+        }
+        return false;
+    }
+
+    /***
+     * @param listener Listener for all rules to be added
+     * @return TSListenerRegistry with listener added
+     */
+    public TSListenerRegistry withListener(TSListener listener) {
+        return new TSListenerRegistry(append(this.genericListeners, listener), this.specificListeners, this.transitionListeners);
+    }
+
+    /***
+     * @param ruleName Rule name identifier
+     * @param listener Listener for rule name to be added
+     * @return TSListenerRegistry with listener added
+     */
+    public TSListenerRegistry withListener(String ruleName, TSListener listener) {
+        HashMap<String, TSListener[]> specificListeners = new HashMap<String, TSListener[]>(this.specificListeners);
+        TSListener[] listeners = specificListeners.get(ruleName);
+        specificListeners.put(ruleName, listeners == null ? new TSListener[] {listener} : append(listeners, listener));
+        return new TSListenerRegistry(this.genericListeners, specificListeners, this.transitionListeners);
+    }
+
+    /***
+     * @param listener Listener for rule state changes to be added
+     * @return TSListenerRegistry with listener added
+     */
+    public TSListenerRegistry withListener(TSTransitionListener listener) {
+        return new TSListenerRegistry(this.genericListeners, this.specificListeners, append(this.transitionListeners, listener));
+    }
+
+    /***
+     * @param listener Listener to be removed from all rules and every rule name
+     * @return TSListenerRegistry with listener removed
+     */
+    public TSListenerRegistry withoutListener(TSListener listener) {
+        HashMap<String, TSListener[]> specificListeners = new HashMap<String, TSListener[]>();
+        for (Map.Entry<String, TSListener[]> entry: this.specificListeners.entrySet()) {
+            specificListeners.put(entry.getKey(), remove(entry.getValue(), listener));
+        }
+        return new TSListenerRegistry(remove(this.genericListeners, listener), specificListeners, this.transitionListeners);
+    }
+
+    /***
+     * @param ruleName Rule name whose listeners are removed
+     * @return TSListenerRegistry with listeners removed
+     */
+    public TSListenerRegistry withoutListener(String ruleName) {
+        HashMap<String, TSListener[]> specificListeners = new HashMap<String, TSListener[]>(this.specificListeners);
+        specificListeners.remove(ruleName);
+        return new TSListenerRegistry(this.genericListeners, specificListeners, this.transitionListeners);
+    }
+
+    /***
+     * @param ruleName Rule name identifier
+     * @param listener Listener for rule name to be removed
+     * @return TSListenerRegistry with listener removed
+     */
+    public TSListenerRegistry withoutListener(String ruleName, TSListener listener) {
+        TSListener[] listeners = this.specificListeners.get(ruleName);
+        if (listeners == null) return this;
+        HashMap<String, TSListener[]> specificListeners = new HashMap<String, TSListener[]>(this.specificListeners);
+        specificListeners.put(ruleName, remove(listeners, listener));
+        return new TSListenerRegistry(this.genericListeners, specificListeners, this.transitionListeners);
+    }
+
+    /***
+     * @param listener Listener for rule state changes to be removed
+     * @return TSListenerRegistry with listener removed
+     */
+    public TSListenerRegistry withoutListener(TSTransitionListener listener) {
+        return new TSListenerRegistry(this.genericListeners, this.specificListeners, remove(this.transitionListeners, listener));
+    }
+
+    /***
+     * Helper method to copy array with one more element
+     * @param array source array
+     * @param element element to be appended
+     * @return new array
+     */
+    private static <T> T[] append(T[] array, T element) {
+        T[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = element;
+        return result;
+    }
+
+    /***
+     * Helper method to copy array without first occurrence of element, or of TSAsyncListener wrapping element
+     * @param array source array
+     * @param element element to be removed
+     * @return new array, or source array if element not found
+     */
+    private static <T> T[] remove(T[] array, T element) {
+        for (int i = 0; i < array.length; i++) {
+            if (element.equals(array[i]) || (array[i] instanceof TSAsyncListener && element.equals(((TSAsyncListener) array[i]).getListener()))) {
+                T[] result = Arrays.copyOf(array, array.length - 1);
+                System.arraycopy(array, i + 1, result, i, array.length - i - 1);
+                return result;
+            }
+        }
+        return array;
+    }
+}
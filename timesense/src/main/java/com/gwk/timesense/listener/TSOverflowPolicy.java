@@ -0,0 +1,25 @@
+package com.gwk.timesense.listener;
+
+/***
+ * What TSAsyncListener does when its queue is full.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public enum TSOverflowPolicy {
+    /***
+     * Drop the oldest pending callback to make room.
+     */
+    DROP_OLDEST,
+    /***
+     * Remove a pending callback for the same rule and queue callback last (latest state wins), drop the oldest if none.
+     */
+    COALESCE,
+    /***
+     * Block the triggering thread until the listener catches up.
+     * Executor should run callbacks on another thread: with an executor running tasks on the triggering thread
+     * (caller runs, or a single thread executor fed from its own thread) a full queue is never emptied and trigger blocks forever.
+     * A callback triggering its own listener again drops the oldest callback instead of blocking.
+     */
+    BLOCK
+}
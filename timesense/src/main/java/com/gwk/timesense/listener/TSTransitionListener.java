@@ -0,0 +1,15 @@
+package com.gwk.timesense.listener;
+
+
+import com.gwk.timesense.rule.TSRule;
+
+/***
+ * Listener object for rule state changes, called once when a rule becomes active and once when it stops being active.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public interface TSTransitionListener {
+    public void timeSenseEntered(TSRule rule, long time);
+    public void timeSenseExited(TSRule rule, long time);
+}
@@ -0,0 +1,126 @@
+package com.gwk.timesense.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ * In memory TSMetrics using atomic counters, so concurrent triggers never wait on each other.
+ * Match count per rule is kept for rule ids lower than rule capacity, higher ids only count in total matches.
+ * Latency of each listener is kept in its own histogram, created the first time listener is seen.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSAtomicMetrics implements TSMetrics {
+
+    public static final int DEFAULT_RULE_CAPACITY = 1024;
+
+    private final AtomicLong detectionCount;
+    private final AtomicLong matchCount;
+    private final AtomicLong dispatchCount;
+    private final AtomicLongArray ruleMatchCounts;
+    private final TSHistogram detectionLatency;
+    private final TSHistogram dispatchLatency;
+    private final ConcurrentHashMap<Object, TSHistogram> listenerLatencies;
+
+    /***
+     * Constructor with default rule capacity.
+     */
+    public TSAtomicMetrics() {
+        this(DEFAULT_RULE_CAPACITY);
+    }
+
+    /***
+     * Constructor.
+     *
+     * @param ruleCapacity Number of rule ids with their own match count
+     */
+    public TSAtomicMetrics(int ruleCapacity) {
+        this.detectionCount = new AtomicLong();
+        this.matchCount = new AtomicLong();
+        this.dispatchCount = new AtomicLong();
+        this.ruleMatchCounts = new AtomicLongArray(ruleCapacity);
+        this.detectionLatency = new TSHistogram();
+        this.dispatchLatency = new TSHistogram();
+        this.listenerLatencies = new ConcurrentHashMap<Object, TSHistogram>();
+    }
+
+    @Override
+    public void detected(int timeCount, long nanos) {
+        this.detectionCount.addAndGet(timeCount);
+        this.detectionLatency.record(nanos);
+    }
+
+    @Override
+    public void matched(int ruleId) {
+        this.matchCount.incrementAndGet();
+        if (ruleId >= 0 && ruleId < this.ruleMatchCounts.length()) this.ruleMatchCounts.incrementAndGet(ruleId);
+    }
+
+    @Override
+    public void dispatched(Object listener, long nanos) {
+        this.dispatchCount.incrementAndGet();
+        this.dispatchLatency.record(nanos);
+
+        TSHistogram latency = this.listenerLatencies.get(listener);
+        if (latency == null) {
+            TSHistogram created = new TSHistogram();
+            latency = this.listenerLatencies.putIfAbsent(listener, created);
+            if (latency == null) latency = created;
+        }
+        latency.record(nanos);
+    }
+
+    /***
+     * @return long Number of times checked against rules, a batch counts every time in it
+     */
+    public long getDetectionCount() {
+        return detectionCount.get();
+    }
+
+    /***
+     * @return long Number of matched rules over all detections
+     */
+    public long getMatchCount() {
+        return matchCount.get();
+    }
+
+    /***
+     * @param ruleId Rule id (TSConfiguration.getRuleId())
+     * @return long Number of detections where rule matched, 0 if rule id is outside rule capacity
+     */
+    public long getMatchCount(int ruleId) {
+        if (ruleId < 0 || ruleId >= this.ruleMatchCounts.length()) return 0;
+        return ruleMatchCounts.get(ruleId);
+    }
+
+    /***
+     * @return long Number of listener callbacks
+     */
+    public long getDispatchCount() {
+        return dispatchCount.get();
+    }
+
+    /***
+     * @return TSHistogram Latency of detection calls in nanoseconds, one value per call
+     */
+    public TSHistogram getDetectionLatency() {
+        return detectionLatency;
+    }
+
+    /***
+     * @return TSHistogram Latency of all listener callbacks in nanoseconds
+     */
+    public TSHistogram getDispatchLatency() {
+        return dispatchLatency;
+    }
+
+    /***
+     * @param listener Listener registered in TimeSense
+     * @return TSHistogram Latency of listener callbacks in nanoseconds, or null if listener was never called
+     */
+    public TSHistogram getDispatchLatency(Object listener) {
+        return listenerLatencies.get(listener);
+    }
+}
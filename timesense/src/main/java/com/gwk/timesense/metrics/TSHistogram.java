@@ -0,0 +1,109 @@
+package com.gwk.timesense.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ * Lock free histogram of non negative values (such as latency in nanoseconds).
+ * Values are counted in power of two buckets, bucket i holds values from 2^(i-1) to 2^i - 1 (bucket 0 holds 0),
+ * so percentiles are accurate to a factor of two.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSHistogram {
+
+    public static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /***
+     * Constructor.
+     */
+    public TSHistogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /***
+     * Record value, negative value is recorded as 0
+     *
+     * @param value to be recorded
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        this.buckets.incrementAndGet(bucketOf(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+
+        long max;
+        while (value > (max = this.max.get()) && !this.max.compareAndSet(max, value)) {
+            // Retry until max is not lower than value
+        }
+    }
+
+    /***
+     * @return long Number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /***
+     * @return long Sum of recorded values
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /***
+     * @return long Highest recorded value
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /***
+     * @param bucket Bucket index
+     * @return long Number of recorded values in bucket
+     */
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /***
+     * Approximate percentile, returned as upper bound of the bucket where percentile falls
+     *
+     * @param percentile from 0 to 100
+     * @return long Value at percentile, 0 if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            count += this.buckets.get(bucket);
+        }
+        if (count == 0) return 0;
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += this.buckets.get(bucket);
+            if (seen >= rank && seen > 0) return Math.min(bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1, this.max.get());
+        }
+        return this.max.get();
+    }
+
+    /***
+     * Helper method to find bucket of value
+     * @param value non negative value
+     * @return bucket index
+     */
+    private static int bucketOf(long value) {
+        return BUCKET_COUNT - Long.numberOfLeadingZeros(value);
+    }
+}
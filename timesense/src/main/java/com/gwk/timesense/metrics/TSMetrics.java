@@ -0,0 +1,15 @@
+package com.gwk.timesense.metrics;
+
+/***
+ * Metrics sink for TimeSense, set with TimeSense.setMetrics().
+ * Methods are called on the detecting and triggering threads, possibly concurrently, so they should be cheap and thread safe.
+ * TimeSense does not measure anything when no sink is set.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public interface TSMetrics {
+    public void detected(int timeCount, long nanos);
+    public void matched(int ruleId);
+    public void dispatched(Object listener, long nanos);
+}
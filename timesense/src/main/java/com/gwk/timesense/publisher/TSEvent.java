@@ -0,0 +1,68 @@
+package com.gwk.timesense.publisher;
+
+import com.gwk.timesense.rule.TSRule;
+
+/***
+ * Event published by TSEventPublisher.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSEvent {
+
+    /***
+     * Kind of event.
+     */
+    public enum Type {
+        /***
+         * Rule became active.
+         */
+        ENTERED,
+        /***
+         * Rule stopped being active.
+         */
+        EXITED,
+        /***
+         * Trigger matched at least one rule, event has no rule.
+         */
+        TRIGGERED
+    }
+
+    private final Type type;
+    private final TSRule rule;
+    private final long time;
+
+    /***
+     * Constructor.
+     *
+     * @param type Kind of event
+     * @param rule Entered or exited rule, null for TRIGGERED
+     * @param time Event time in epoch milliseconds
+     */
+    public TSEvent(Type type, TSRule rule, long time) {
+        this.type = type;
+        this.rule = rule;
+        this.time = time;
+    }
+
+    /***
+     * @return Type Getter for type property
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /***
+     * @return TSRule Getter for rule property, null for TRIGGERED
+     */
+    public TSRule getRule() {
+        return rule;
+    }
+
+    /***
+     * @return long Getter for time property
+     */
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,249 @@
+package com.gwk.timesense.publisher;
+
+import com.gwk.timesense.clock.TSClock;
+import com.gwk.timesense.clock.TSSystemClock;
+import com.gwk.timesense.listener.TSListener;
+import com.gwk.timesense.listener.TSTransitionListener;
+import com.gwk.timesense.rule.TSRule;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/***
+ * Publisher of rule transitions and triggers, registered in TimeSense with TimeSense.createPublisher().
+ * Every subscriber has its own buffer and receives events only as requested. Events waiting in a buffer are coalesced:
+ * a new event of a rule replaces the waiting event of the same rule (latest state wins) and a new trigger replaces the waiting trigger,
+ * so a slow subscriber buffers at most one event per rule plus one trigger however many transitions happen.
+ * Events are delivered on the triggering thread, or on the thread calling request() for buffered events.
+ * A subscriber throwing an exception is cancelled.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSEventPublisher implements TSPublisher<TSEvent>, TSListener, TSTransitionListener {
+
+    private static final Object TRIGGER_KEY = new Object();
+
+    private final TSClock clock;
+    private final CopyOnWriteArrayList<Subscription> subscriptions;
+    private volatile boolean closed;
+
+    /***
+     * Constructor with system clock.
+     */
+    public TSEventPublisher() {
+        this(TSSystemClock.INSTANCE);
+    }
+
+    /***
+     * Constructor.
+     *
+     * @param clock Clock giving time of TRIGGERED events published without trigger time
+     */
+    public TSEventPublisher(TSClock clock) {
+        this.clock = clock;
+        this.subscriptions = new CopyOnWriteArrayList<Subscription>();
+    }
+
+    @Override
+    public void subscribe(TSSubscriber<? super TSEvent> subscriber) {
+        if (subscriber == null) throw new NullPointerException("Subscriber should not be null");
+        Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        if (this.closed) {
+            subscription.complete();
+            return;
+        }
+        this.subscriptions.add(subscription);
+    }
+
+    /***
+     * @return int Number of active subscribers
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /***
+     * Complete every subscriber after its buffered events are delivered, events published afterward are ignored
+     */
+    public void close() {
+        this.closed = true;
+        for (Subscription subscription: this.subscriptions) {
+            subscription.complete();
+        }
+        this.subscriptions.clear();
+    }
+
+    @Override
+    public void timeSenseTriggered() {
+        this.timeSenseTriggered(this.clock.currentTimeMillis());
+    }
+
+    /***
+     * Publish TRIGGERED event of a trigger at known time, called by TimeSense so trigger(time) is stamped with its time
+     *
+     * @param time Trigger time in epoch milliseconds
+     */
+    public void timeSenseTriggered(long time) {
+        this.publish(TRIGGER_KEY, new TSEvent(TSEvent.Type.TRIGGERED, null, time));
+    }
+
+    @Override
+    public void timeSenseTriggered(String ruleName) {
+    }
+
+    @Override
+    public void timeSenseEntered(TSRule rule, long time) {
+        this.publish(new RuleKey(rule), new TSEvent(TSEvent.Type.ENTERED, rule, time));
+    }
+
+    @Override
+    public void timeSenseExited(TSRule rule, long time) {
+        this.publish(new RuleKey(rule), new TSEvent(TSEvent.Type.EXITED, rule, time));
+    }
+
+    /***
+     * Helper method to offer event to every subscriber
+     * @param key coalescing key of event
+     * @param event event to be published
+     */
+    private void publish(Object key, TSEvent event) {
+        if (this.closed) return;
+        for (Subscription subscription: this.subscriptions) {
+            subscription.offer(key, event);
+        }
+    }
+
+    /***
+     * Coalescing key of a rule, comparing rule objects by identity.
+     */
+    private static class RuleKey {
+        private final TSRule rule;
+
+        private RuleKey(TSRule rule) {
+            this.rule = rule;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(rule);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof RuleKey && ((RuleKey) obj).rule == this.rule;
+        }
+    }
+
+    /***
+     * Subscription with its own demand and coalescing buffer.
+     */
+    private class Subscription implements TSSubscription {
+        private final TSSubscriber<? super TSEvent> subscriber;
+        private final LinkedHashMap<Object, TSEvent> pending;
+        private long demand;
+        private boolean cancelled;
+        private boolean completed;
+        private boolean draining;
+        private Throwable error;
+
+        private Subscription(TSSubscriber<? super TSEvent> subscriber) {
+            this.subscriber = subscriber;
+            this.pending = new LinkedHashMap<Object, TSEvent>();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (this.cancelled) return;
+                if (n <= 0) {
+                    this.error = new IllegalArgumentException("Request should be positive");
+                    this.pending.clear();
+                } else {
+                    this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+                }
+            }
+            this.drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                this.cancelled = true;
+                this.pending.clear();
+            }
+            TSEventPublisher.this.subscriptions.remove(this);
+        }
+
+        private void offer(Object key, TSEvent event) {
+            synchronized (this) {
+                if (this.cancelled || this.completed) return;
+                this.pending.remove(key);
+                this.pending.put(key, event);
+            }
+            this.drain();
+        }
+
+        private void complete() {
+            synchronized (this) {
+                this.completed = true;
+            }
+            this.drain();
+        }
+
+        /***
+         * Deliver buffered events while there is demand, one thread at a time
+         */
+        private void drain() {
+            synchronized (this) {
+                if (this.draining) return;
+                this.draining = true;
+            }
+            while (true) {
+                TSEvent event = null;
+                boolean isComplete = false;
+                Throwable error;
+                synchronized (this) {
+                    error = this.error;
+                    if (this.cancelled) {
+                        this.draining = false;
+                        return;
+                    }
+                    if (error != null) {
+                        this.cancelled = true;
+                    } else if (this.demand > 0 && !this.pending.isEmpty()) {
+                        Iterator<TSEvent> iterator = this.pending.values().iterator();
+                        event = iterator.next();
+                        iterator.remove();
+                        if (this.demand != Long.MAX_VALUE) this.demand--;
+                    } else if (this.completed && this.pending.isEmpty()) {
+                        this.cancelled = true;
+                        isComplete = true;
+                    } else {
+                        this.draining = false;
+                        return;
+                    }
+                }
+                try {
+                    if (error != null) {
+                        TSEventPublisher.this.subscriptions.remove(this);
+                        this.subscriber.onError(error);
+                    } else if (isComplete) {
+                        this.subscriber.onComplete();
+                    } else {
+                        this.subscriber.onNext(event);
+                    }
+                } catch (RuntimeException e) {
+                    // Subscriber is broken, drop it without disturbing trigger or other subscribers
+                    synchronized (this) {
+                        this.draining = false;
+                    }
+                    this.cancel();
+                    return;
+                }
+            }
+        }
+    }
+}
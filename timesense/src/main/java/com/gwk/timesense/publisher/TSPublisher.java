@@ -0,0 +1,12 @@
+package com.gwk.timesense.publisher;
+
+/***
+ * Producer of items for subscribers that control how many items they receive.
+ * Same contract as java.util.concurrent.Flow.Publisher, which is not available on Android.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public interface TSPublisher<T> {
+    public void subscribe(TSSubscriber<? super T> subscriber);
+}
@@ -0,0 +1,16 @@
+package com.gwk.timesense.publisher;
+
+/***
+ * Receiver of items from TSPublisher.
+ * Same contract as java.util.concurrent.Flow.Subscriber: onSubscribe first, then onNext at most as many times as requested,
+ * then onComplete or onError. Calls are never concurrent.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public interface TSSubscriber<T> {
+    public void onSubscribe(TSSubscription subscription);
+    public void onNext(T item);
+    public void onError(Throwable throwable);
+    public void onComplete();
+}
@@ -0,0 +1,13 @@
+package com.gwk.timesense.publisher;
+
+/***
+ * Link between TSPublisher and one TSSubscriber.
+ * Same contract as java.util.concurrent.Flow.Subscription.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public interface TSSubscription {
+    public void request(long n);
+    public void cancel();
+}
@@ -0,0 +1,203 @@
+package com.gwk.timesense.rule;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/***
+ * Compiled form of TSRule used in TimeSense detection.
+ * Start and end time are kept as millisecond-of-day offsets so matching a time needs no Calendar or Date.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSCompiledRule {
+
+    public static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final long OFFSET_STEP_MILLIS = 7 * DAY_MILLIS;
+
+    private final TSRule rule;
+    private final TimeZone timeZone;
+    private final int startOffset;
+    private final int endOffset;
+
+    /***
+     * Constructor.
+     *
+     * @param rule Source rule
+     * @param timeZone Time zone used to read rule times and matched times
+     */
+    public TSCompiledRule(TSRule rule, TimeZone timeZone) {
+        this.rule = rule;
+        this.timeZone = timeZone;
+        this.startOffset = timeOfDay(rule.getStartTime().getTime(), timeZone);
+        this.endOffset = timeOfDay(rule.getEndTime().getTime(), timeZone);
+    }
+
+    /***
+     * @return TSRule Getter for source rule property
+     */
+    public TSRule getRule() {
+        return rule;
+    }
+
+    /***
+     * @return TimeZone Getter for time zone property
+     */
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    /***
+     * @return int Start time as millisecond of day (included in calculation)
+     */
+    public int getStartOffset() {
+        return startOffset;
+    }
+
+    /***
+     * @return int End time as millisecond of day (excluded in calculation)
+     */
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    /***
+     * @return Whether rule wraps past midnight (start time after end time), like TS_RULE_NAME_NIGHT
+     */
+    public boolean isOvernight() {
+        return startOffset > endOffset;
+    }
+
+    /***
+     * @param epochMillis Time to be checked with rule
+     * @return Whether time match rule criteria
+     */
+    public boolean isMatch(long epochMillis) {
+        return this.contains(timeOfDay(epochMillis, this.timeZone));
+    }
+
+    /***
+     * @param timeOfDay Millisecond of day to be checked with rule
+     * @return Whether millisecond of day is inside start and end offset
+     */
+    public boolean contains(int timeOfDay) {
+        return contains(this.startOffset, this.endOffset, timeOfDay);
+    }
+
+    /***
+     * Milliseconds of time range that match rule, computed from whole days and partial edge days instead of sampling.
+     * Matching time of every period of constant time zone offset is arithmetic, finding those periods (offsetBounds())
+     * reads the offset once per OFFSET_STEP_MILLIS of range, so cost is O(weeks in range + offset changes)
+     *
+     * @param from Range start in epoch milliseconds (included)
+     * @param to Range end in epoch milliseconds (excluded)
+     * @return long Matching milliseconds
+     */
+    public long getTimeSpent(long from, long to) {
+        long[] bounds = offsetBounds(from, to, this.timeZone);
+        long spent = 0;
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int offset = this.timeZone.getOffset(bounds[i]);
+            spent += spentBefore(this.startOffset, this.endOffset, bounds[i + 1] + offset) - spentBefore(this.startOffset, this.endOffset, bounds[i] + offset);
+        }
+        return spent;
+    }
+
+    /***
+     * Matching milliseconds of local time line from local midnight of 1 January 1970 to local time, negative before it.
+     * Time spent in [a, b) of constant time zone offset is spentBefore(b) - spentBefore(a)
+     *
+     * @param startOffset lower bound (included)
+     * @param endOffset upper bound (excluded)
+     * @param local local wall clock milliseconds
+     * @return long Matching milliseconds
+     */
+    public static long spentBefore(int startOffset, int endOffset, long local) {
+        long days = local / DAY_MILLIS;
+        long timeOfDay = local % DAY_MILLIS;
+        if (timeOfDay < 0) {
+            timeOfDay += DAY_MILLIS;
+            days--;
+        }
+
+        if (startOffset <= endOffset) {
+            return days * (endOffset - startOffset) + Math.min(Math.max(timeOfDay, startOffset), endOffset) - startOffset;
+        }
+        return days * (DAY_MILLIS - startOffset + endOffset) + Math.min(timeOfDay, endOffset) + Math.max(0, timeOfDay - startOffset);
+    }
+
+    /***
+     * Split time range where time zone offset changes (such as daylight saving time), checking offset every OFFSET_STEP_MILLIS
+     * and binary searching each change, O(weeks in range + offset changes * log(OFFSET_STEP_MILLIS)).
+     * TimeZone has no transition query on every supported platform, so a change reverted within one step is not found
+     *
+     * @param from Range start in epoch milliseconds (included)
+     * @param to Range end in epoch milliseconds (excluded)
+     * @param timeZone Time zone of offset
+     * @return long[] from, every offset change, and to, or empty array if range is empty
+     */
+    public static long[] offsetBounds(long from, long to, TimeZone timeZone) {
+        if (from >= to) return new long[0];
+        long[] bounds = new long[4];
+        int count = 1;
+        bounds[0] = from;
+        long cursor = from;
+        int offset = timeZone.getOffset(cursor);
+        while (cursor < to) {
+            long next = to - cursor > OFFSET_STEP_MILLIS ? cursor + OFFSET_STEP_MILLIS : to;
+            if (timeZone.getOffset(next - 1) == offset) {
+                cursor = next;
+                continue;
+            }
+            long low = cursor;
+            long high = next - 1;
+            while (high - low > 1) {
+                long middle = low + (high - low) / 2;
+                if (timeZone.getOffset(middle) == offset) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            if (count + 1 == bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            bounds[count++] = high;
+            cursor = high;
+            offset = timeZone.getOffset(cursor);
+        }
+        bounds[count++] = to;
+        return count == bounds.length ? bounds : Arrays.copyOf(bounds, count);
+    }
+
+    /***
+     * Helper method to check whether millisecond of day is inside start and end offset, wrapping past midnight when start is after end
+     *
+     * @param startOffset lower bound (included)
+     * @param endOffset upper bound (excluded)
+     * @param timeOfDay to be checked
+     * @return whether inside or not
+     */
+    public static boolean contains(int startOffset, int endOffset, int timeOfDay) {
+        if (startOffset <= endOffset) return timeOfDay >= startOffset && timeOfDay < endOffset;
+        return timeOfDay >= startOffset || timeOfDay < endOffset;
+    }
+
+    /***
+     * @param epochMillis Time to be converted
+     * @param timeZone Time zone used to read the time
+     * @return long Time shifted to local wall clock milliseconds
+     */
+    public static long localTime(long epochMillis, TimeZone timeZone) {
+        return epochMillis + timeZone.getOffset(epochMillis);
+    }
+
+    /***
+     * @param epochMillis Time to be converted
+     * @param timeZone Time zone used to read the time
+     * @return int Millisecond of day of the time in time zone
+     */
+    public static int timeOfDay(long epochMillis, TimeZone timeZone) {
+        long time = localTime(epochMillis, timeZone) % DAY_MILLIS;
+        if (time < 0) time += DAY_MILLIS;
+        return (int) time;
+    }
+}
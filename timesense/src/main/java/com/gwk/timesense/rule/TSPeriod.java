@@ -0,0 +1,77 @@
+package com.gwk.timesense.rule;
+
+/***
+ * Period of day covered by the four default rules (TSRule.morning(), afternoon(), evening(), and night()).
+ * Default rules start and end on whole hours, so a period is found with one lookup in a table of 24 hours.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public enum TSPeriod {
+    /***
+     * 04:00 until 11:00.
+     */
+    MORNING(TSRule.TS_RULE_NAME_MORNING, 4, 11),
+    /***
+     * 11:00 until 17:00.
+     */
+    AFTERNOON(TSRule.TS_RULE_NAME_AFTERNOON, 11, 17),
+    /***
+     * 17:00 until 21:00.
+     */
+    EVENING(TSRule.TS_RULE_NAME_EVENING, 17, 21),
+    /***
+     * 21:00 until 04:00 next day.
+     */
+    NIGHT(TSRule.TS_RULE_NAME_NIGHT, 21, 4);
+
+    private static final int HOUR_MILLIS = 60 * 60 * 1000;
+    private static final TSPeriod[] HOURS = new TSPeriod[24];
+
+    static {
+        for (TSPeriod period: values()) {
+            for (int hour = period.startHour; hour != period.endHour; hour = (hour + 1) % 24) {
+                HOURS[hour] = period;
+            }
+        }
+    }
+
+    private final String ruleName;
+    private final int startHour;
+    private final int endHour;
+
+    TSPeriod(String ruleName, int startHour, int endHour) {
+        this.ruleName = ruleName;
+        this.startHour = startHour;
+        this.endHour = endHour;
+    }
+
+    /***
+     * @return String Name of default rule covering period
+     */
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    /***
+     * @return int Hour of day where period starts (included)
+     */
+    public int getStartHour() {
+        return startHour;
+    }
+
+    /***
+     * @return int Hour of day where period ends (excluded)
+     */
+    public int getEndHour() {
+        return endHour;
+    }
+
+    /***
+     * @param timeOfDay Millisecond of day
+     * @return TSPeriod containing millisecond of day
+     */
+    public static TSPeriod of(int timeOfDay) {
+        return HOURS[timeOfDay / HOUR_MILLIS];
+    }
+}
@@ -2,9 +2,15 @@ package com.gwk.timesense.rule;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /***
  * Rule object used in TimeSense detection.
+ * Rules can be changed after they are added to a configuration. Every change of name or times increases the rule
+ * modification count and a global change count, so configurations notice changed rules with one read when nothing changed.
+ * Times are copied in and out, so a rule only changes through its setters.
  *
  * @author Anselmus KA Kurniawan
  * @version 0.1
@@ -15,10 +21,17 @@ public class TSRule {
     public static final String TS_RULE_NAME_AFTERNOON = "TS_RULE_NAME_AFTERNOON";
     public static final String TS_RULE_NAME_EVENING = "TS_RULE_NAME_EVENING";
     public static final String TS_RULE_NAME_NIGHT = "TS_RULE_NAME_NIGHT";
+    public static final String ATTRIBUTE_PRIORITY = "priority";
+
+    private static final AtomicInteger changeCount = new AtomicInteger();
 
     private String name;
     private Date startTime;
     private Date endTime;
+    private HashMap<String, String> attributes;
+    private boolean frozen;
+    private volatile int modificationCount;
+    private TSCompiledRule compiledRule;
 
     /***
      * Constructor.
@@ -29,8 +42,20 @@ public class TSRule {
      */
     public TSRule(String name, Date startTime, Date endTime) {
         this.name = name;
-        this.startTime = startTime;
-        this.endTime = endTime;
+        this.startTime = copy(startTime);
+        this.endTime = copy(endTime);
+    }
+
+    /***
+     * Copy constructor, copy is not frozen.
+     *
+     * @param rule Rule to be copied
+     */
+    public TSRule(TSRule rule) {
+        this.name = rule.name;
+        this.startTime = copy(rule.startTime);
+        this.endTime = copy(rule.endTime);
+        if (rule.attributes != null) this.attributes = new HashMap<String, String>(rule.attributes);
     }
 
     /***
@@ -41,6 +66,7 @@ public class TSRule {
         cal.set(Calendar.HOUR_OF_DAY, 4);
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
         Date start = cal.getTime();
 
         cal.set(Calendar.HOUR_OF_DAY, 11);
@@ -57,6 +83,7 @@ public class TSRule {
         cal.set(Calendar.HOUR_OF_DAY, 11);
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
         Date start = cal.getTime();
 
         cal.set(Calendar.HOUR_OF_DAY, 17);
@@ -73,6 +100,7 @@ public class TSRule {
         cal.set(Calendar.HOUR_OF_DAY, 17);
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
         Date start = cal.getTime();
 
         cal.set(Calendar.HOUR_OF_DAY, 21);
@@ -89,6 +117,7 @@ public class TSRule {
         cal.set(Calendar.HOUR_OF_DAY, 21);
         cal.set(Calendar.MINUTE, 0);
         cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
         Date start = cal.getTime();
 
         cal.set(Calendar.HOUR_OF_DAY, 4);
@@ -104,39 +133,187 @@ public class TSRule {
         return name;
     }
 
+    /***
+     * Extra attribute of rule, such as attributes read from rule file
+     *
+     * @param key Attribute name
+     * @return String Attribute value, or null if not set
+     */
+    public String getAttribute(String key) {
+        return attributes == null ? null : attributes.get(key);
+    }
+
+    /***
+     * @param key Attribute name
+     * @param value Set attribute with this value, null to remove it
+     * @throws IllegalArgumentException if key is ATTRIBUTE_PRIORITY and value is not a number
+     */
+    public void setAttribute(String key, String value) {
+        this.checkNotFrozen();
+        if (ATTRIBUTE_PRIORITY.equals(key) && value != null) {
+            try {
+                Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid priority " + value, e);
+            }
+        }
+        if (value == null) {
+            if (this.attributes != null) this.attributes.remove(key);
+            return;
+        }
+        if (this.attributes == null) this.attributes = new HashMap<String, String>();
+        this.attributes.put(key, value);
+    }
+
+    /***
+     * Priority is kept as ATTRIBUTE_PRIORITY attribute, so it is read from rule files and stored in configuration files.
+     * Higher priority rule wins in TimeSense.detectFirst, rules with equal priority keep configuration order
+     *
+     * @return int Getter for priority property, 0 if not set
+     */
+    public int getPriority() {
+        String priority = this.getAttribute(ATTRIBUTE_PRIORITY);
+        return priority == null ? 0 : Integer.parseInt(priority);
+    }
+
+    /***
+     * Configuration reads priority when rule is added, use TSConfiguration.updatePriority() for registered rule
+     *
+     * @param priority Set priority property with this value
+     */
+    public void setPriority(int priority) {
+        this.setAttribute(ATTRIBUTE_PRIORITY, Integer.toString(priority));
+    }
+
+    /***
+     * @return HashMap<String, String> Copy of all attributes
+     */
+    public HashMap<String, String> getAttributes() {
+        return attributes == null ? new HashMap<String, String>() : new HashMap<String, String>(attributes);
+    }
+
     /***
      * @param name Set name property with this value
      */
     public void setName(String name) {
+        this.checkNotFrozen();
         this.name = name;
+        this.changed();
     }
 
     /***
-     * @return Date Getter for start time property
+     * @return Date Copy of start time property
      */
     public Date getStartTime() {
-        return startTime;
+        return copy(startTime);
     }
 
     /***
-     * @param startTime Set start time property with this value
+     * @param startTime Set start time property with a copy of this value
      */
     public void setStartTime(Date startTime) {
-        this.startTime = startTime;
+        this.checkNotFrozen();
+        this.startTime = copy(startTime);
+        this.compiledRule = null;
+        this.changed();
     }
 
     /***
-     * @return Date Getter for end time property
+     * @return Date Copy of end time property
      */
     public Date getEndTime() {
-        return endTime;
+        return copy(endTime);
     }
 
     /***
-     * @param endTime Set end time property with this value
+     * @param endTime Set end time property with a copy of this value
      */
     public void setEndTime(Date endTime) {
-        this.endTime = endTime;
+        this.checkNotFrozen();
+        this.endTime = copy(endTime);
+        this.compiledRule = null;
+        this.changed();
+    }
+
+    /***
+     * @return int Number of changes made to name, start time or end time of this rule
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /***
+     * Configurations compare it with the count they last saw, and only look for changed rules when it differs
+     *
+     * @return int Number of changes made to name, start time or end time of any rule
+     */
+    public static int getChangeCount() {
+        return changeCount.get();
+    }
+
+    /***
+     * @return boolean Whether rule is frozen
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /***
+     * Make rule immutable, setters throw UnsupportedOperationException.
+     * Used by TSCompiledConfiguration, use TSRule(TSRule) to get a changeable copy
+     */
+    public void freeze() {
+        this.frozen = true;
+    }
+
+    /***
+     * Helper method to count change of name or times, rule count first so a configuration seeing the global count sees the rule count
+     */
+    private void changed() {
+        this.modificationCount++;
+        changeCount.incrementAndGet();
+    }
+
+    /***
+     * Helper method to compare time zones without allocating
+     * @param timeZone1 first time zone
+     * @param timeZone2 second time zone
+     * @return whether zones have the same id and offset rules
+     */
+    private static boolean isSameZone(TimeZone timeZone1, TimeZone timeZone2) {
+        return timeZone1 == timeZone2 || (timeZone1.getID().equals(timeZone2.getID()) && timeZone1.hasSameRules(timeZone2));
+    }
+
+    /***
+     * Helper method to copy date
+     * @param date date to be copied, may be null
+     * @return copy, or null
+     */
+    private static Date copy(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
+
+    /***
+     * Helper method to reject change of frozen rule
+     */
+    private void checkNotFrozen() {
+        if (this.frozen) throw new UnsupportedOperationException("Rule is frozen");
+    }
+
+    /***
+     * Compile rule into millisecond-of-day offsets, reusing the previous result while the rule is unchanged.
+     * Time zones are compared by id and rules, so equal zones from different TimeZone.getDefault() calls share the result
+     *
+     * @param timeZone Time zone used to read rule times
+     * @return TSCompiledRule
+     */
+    public TSCompiledRule compile(TimeZone timeZone) {
+        TSCompiledRule compiled = this.compiledRule;
+        if (compiled == null || !isSameZone(compiled.getTimeZone(), timeZone)) {
+            compiled = new TSCompiledRule(this, timeZone);
+            this.compiledRule = compiled;
+        }
+        return compiled;
     }
 
     @Override
@@ -161,4 +338,13 @@ public class TSRule {
         }
         return false;
     }
-}
+
+    @Override
+    public int hashCode() {
+        // Same fields as equals, so rules can be used as key in hash collections
+        int hash = this.name.hashCode();
+        hash = 31 * hash + (int) (this.startTime.getTime() % (24*60*60*1000L));
+        hash = 31 * hash + (int) (this.endTime.getTime() % (24*60*60*1000L));
+        return hash;
+    }
+}
\ No newline at end of file
@@ -1,7 +1,18 @@
 package com.gwk.timesense;
 
+import com.gwk.timesense.clock.TSVirtualClock;
 import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.index.TSRuleIndex;
+import com.gwk.timesense.listener.TSIndexedListener;
 import com.gwk.timesense.listener.TSListener;
+import com.gwk.timesense.listener.TSOverflowPolicy;
+import com.gwk.timesense.listener.TSTransitionListener;
+import com.gwk.timesense.metrics.TSAtomicMetrics;
+import com.gwk.timesense.publisher.TSEvent;
+import com.gwk.timesense.publisher.TSEventPublisher;
+import com.gwk.timesense.publisher.TSSubscriber;
+import com.gwk.timesense.publisher.TSSubscription;
+import com.gwk.timesense.rule.TSPeriod;
 import com.gwk.timesense.rule.TSRule;
 
 import org.junit.After;
@@ -19,6 +30,10 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.*;
 
@@ -45,6 +60,12 @@ public class TimeSenseUnitTest {
     @Mock
     private TSListener listener;
 
+    @Mock
+    private TSTransitionListener transitionListener;
+
+    @Mock
+    private TSIndexedListener indexedListener;
+
     @InjectMocks
     private TimeSense timeSense = TimeSense.getInstance();
 
@@ -74,6 +95,8 @@ public class TimeSenseUnitTest {
 
     @After
     public void tearDown() throws Exception {
+        TimeSense.getInstance().setEdgeTriggered(false);
+        TimeSense.getInstance().removeListener(this.transitionListener);
     }
 
     @Test
@@ -82,6 +105,22 @@ public class TimeSenseUnitTest {
         assertNotNull("TimeSense object should not be null", timeSense);
     }
 
+    @Test
+    public void constructor() throws Exception {
+        TimeSense timeSense1 = new TimeSense(TSConfiguration.defaultConfiguration());
+        TimeSense timeSense2 = new TimeSense(TSConfiguration.defaultConfiguration());
+        timeSense1.addListener(TSRule.TS_RULE_NAME_MORNING, this.listener);
+
+        assertNotSame("Engine should not be the default engine", TimeSense.getInstance(), timeSense1);
+        assertSame("Engines with equal rules should share lookup data", timeSense1.getIndex().getTable(), timeSense2.getIndex().getTable());
+
+        timeSense2.trigger(this.morningDate);
+        verify(this.listener, times(0)).timeSenseTriggered(TSRule.TS_RULE_NAME_MORNING);
+
+        timeSense1.trigger(this.morningDate);
+        verify(this.listener, times(1)).timeSenseTriggered(TSRule.TS_RULE_NAME_MORNING);
+    }
+
     @Test
     public void setConfiguration() throws Exception {
         TSConfiguration configuration = TSConfiguration.defaultConfiguration();
@@ -90,6 +129,24 @@ public class TimeSenseUnitTest {
         assertEquals("Rules should be equal", configuration.getRules(), TimeSense.getInstance().getConfiguration().getRules());
     }
 
+    @Test
+    public void setConfigurationWithIndex() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        TSRuleIndex index = new TSRuleIndex(configuration, TimeZone.getTimeZone("UTC"), 1000);
+        TimeSense timeSense = new TimeSense();
+        timeSense.setConfiguration(configuration, index);
+
+        assertSame("Configuration should be set", configuration, timeSense.getConfiguration());
+        assertSame("Time zone should be taken from index", index.getTimeZone(), timeSense.getTimeZone());
+        assertEquals("Index resolution should be taken from index", 1000, timeSense.getIndexResolution());
+        assertSame("Index should be used without rebuilding", index, timeSense.getIndex());
+
+        timeSense.setIndexResolution(2000);
+
+        assertNotSame("Index should be rebuilt after resolution change", index, timeSense.getIndex());
+        assertSame("Time zone should be kept", index.getTimeZone(), timeSense.getIndex().getTimeZone());
+    }
+
     @Test
     public void addRules() throws Exception {
         TimeSense.getInstance().setConfiguration(new TSConfiguration());
@@ -151,6 +208,38 @@ public class TimeSenseUnitTest {
         assertEqualDates(now, dates.get(1));
     }
 
+    @Test
+    public void detectChangedRule() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(this.morningDate);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.HOUR_OF_DAY, 10);
+        Date start = calendar.getTime();
+        calendar.set(Calendar.HOUR_OF_DAY, 11);
+        TSRule rule = new TSRule("RULE_A", start, calendar.getTime());
+        TSConfiguration configuration = new TSConfiguration();
+        configuration.addRule(rule);
+        TimeSense timeSense = new TimeSense(configuration);
+        timeSense.addListener("RULE_A", this.listener);
+        calendar.set(Calendar.HOUR_OF_DAY, 12);
+        calendar.set(Calendar.MINUTE, 30);
+        Date time = calendar.getTime();
+        assertEquals("Rule should not be detected before change", 0, timeSense.detect(time).size());
+
+        calendar.set(Calendar.MINUTE, 0);
+        rule.setStartTime(calendar.getTime());
+        calendar.set(Calendar.HOUR_OF_DAY, 13);
+        rule.setEndTime(calendar.getTime());
+
+        assertTrue("Changed rule should match", timeSense.isMatch(rule, time));
+        assertEquals("Changed rule should be detected", 1, timeSense.detect(time).size());
+        timeSense.trigger(time);
+        verify(this.listener, times(1)).timeSenseTriggered("RULE_A");
+
+        rule.getStartTime().setTime(0);
+        assertEquals("Returned start time should be a copy", 1, timeSense.detect(time).size());
+    }
+
     @Test
     public void detectWithTime() throws Exception {
         TimeSense.getInstance().setConfiguration(TSConfiguration.defaultConfiguration());
@@ -160,6 +249,60 @@ public class TimeSenseUnitTest {
         assertEquals("Detected rule should be morning rule", TSRule.TS_RULE_NAME_MORNING, rule.getName());
     }
 
+    @Test
+    public void count() throws Exception {
+        TimeSense.getInstance().setConfiguration(TSConfiguration.defaultConfiguration());
+        long[] times = {this.morningDate.getTime(), this.nightDate.getTime(), this.nightDate.getTime()};
+        long[] counts = TimeSense.getInstance().count(times);
+
+        assertEquals("Morning rule should be counted once", 1, counts[0]);
+        assertEquals("Afternoon rule should not be counted", 0, counts[1]);
+        assertEquals("Night rule should be counted twice", 2, counts[3]);
+    }
+
+    @Test
+    public void detectInParallel() throws Exception {
+        TimeSense timeSense = new TimeSense(TSConfiguration.defaultConfiguration());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        timeSense.setParallelDetection(executor, 1);
+
+        try {
+            ArrayList<TSRule> rules = timeSense.detect(this.morningDate);
+            assertEquals("Rules size should be one", 1, rules.size());
+            assertEquals("Detected rule should be morning rule", TSRule.TS_RULE_NAME_MORNING, rules.get(0).getName());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void classify() throws Exception {
+        assertEquals("Period should be morning", TSPeriod.MORNING, TimeSense.getInstance().classify(this.morningDate));
+        assertEquals("Period should be afternoon", TSPeriod.AFTERNOON, TimeSense.getInstance().classify(this.afternoonDate));
+        assertEquals("Period should be evening", TSPeriod.EVENING, TimeSense.getInstance().classify(this.eveningDate.getTime()));
+        assertEquals("Period should be night", TSPeriod.NIGHT, TimeSense.getInstance().classify(this.nightDate.getTime()));
+    }
+
+    @Test
+    public void detectFirst() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        TSRule custom = new TSRule("CUSTOM_RULE", this.morningDate, this.afternoonDate);
+        custom.setPriority(1);
+        configuration.addRule(custom);
+        TimeSense timeSense = new TimeSense(configuration);
+
+        assertEquals("First rule should be custom rule", custom, timeSense.detectFirst(this.morningDate));
+        assertEquals("First rule should be afternoon rule", TSRule.TS_RULE_NAME_AFTERNOON, timeSense.detectFirst(this.afternoonDate).getName());
+
+        custom.setPriority(-1);
+
+        assertEquals("Direct change of registered rule should be ignored", custom, timeSense.detectFirst(this.morningDate));
+
+        timeSense.updatePriority("CUSTOM_RULE", -1);
+
+        assertEquals("First rule should be morning rule", TSRule.TS_RULE_NAME_MORNING, timeSense.detectFirst(this.morningDate).getName());
+    }
+
     @Test
     public void isMorningWithTime() throws Exception {
         TimeSense.getInstance().setConfiguration(TSConfiguration.defaultConfiguration());
@@ -279,6 +422,133 @@ public class TimeSenseUnitTest {
         verify(this.listener, times(1)).timeSenseTriggered();
     }
 
+    @Test
+    public void triggerIndexedListener() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        TimeSense timeSense = new TimeSense(configuration);
+        timeSense.addListener(TSRule.TS_RULE_NAME_MORNING, this.indexedListener);
+
+        timeSense.trigger(this.morningDate);
+        verify(this.indexedListener, times(1)).timeSenseTriggered(configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_MORNING)));
+        verify(this.indexedListener, times(0)).timeSenseTriggered(TSRule.TS_RULE_NAME_MORNING);
+
+        timeSense.removeRule(TSRule.TS_RULE_NAME_NIGHT);
+        timeSense.addRule(TSRule.night());
+        timeSense.addListener(TSRule.TS_RULE_NAME_NIGHT, this.indexedListener);
+        timeSense.trigger(this.nightDate);
+        verify(this.indexedListener, times(1)).timeSenseTriggered(configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_NIGHT)));
+    }
+
+    @Test
+    public void metricsWithSharedRule() throws Exception {
+        TSConfiguration configuration1 = TSConfiguration.defaultConfiguration();
+        TSRule night = configuration1.findRule(TSRule.TS_RULE_NAME_NIGHT);
+        TSConfiguration configuration2 = new TSConfiguration();
+        configuration2.addRule(night);
+        TSAtomicMetrics metrics = new TSAtomicMetrics();
+        TimeSense timeSense = new TimeSense(configuration1);
+        timeSense.setMetrics(metrics);
+
+        timeSense.detect(this.nightDate);
+        timeSense.detectFirst(this.nightDate);
+        timeSense.triggerMatch(night, this.nightDate);
+
+        assertEquals("Night match count should be three", 3, metrics.getMatchCount(3));
+        assertEquals("Morning match count should be zero", 0, metrics.getMatchCount(0));
+    }
+
+    @Test
+    public void triggerWithMetrics() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        TSAtomicMetrics metrics = new TSAtomicMetrics();
+        TimeSense timeSense = new TimeSense(configuration);
+        timeSense.setMetrics(metrics);
+        timeSense.addListener(this.listener);
+        timeSense.addListener(TSRule.TS_RULE_NAME_MORNING, this.listener);
+
+        timeSense.trigger(this.morningDate);
+        timeSense.detect(this.afternoonDate);
+
+        assertEquals("Detection count should be two", 2, metrics.getDetectionCount());
+        assertEquals("Morning match count should be one", 1, metrics.getMatchCount(configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_MORNING))));
+        assertEquals("Afternoon match count should be one", 1, metrics.getMatchCount(configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_AFTERNOON))));
+        assertEquals("Dispatch count should be two", 2, metrics.getDispatchCount());
+        assertEquals("Listener latency count should be two", 2, metrics.getDispatchLatency(this.listener).getCount());
+    }
+
+    @Test
+    public void createPublisher() throws Exception {
+        TimeSense timeSense = new TimeSense(TSConfiguration.defaultConfiguration());
+        TSEventPublisher publisher = timeSense.createPublisher();
+        final ArrayList<TSEvent> events = new ArrayList<TSEvent>();
+        publisher.subscribe(new TSSubscriber<TSEvent>() {
+            @Override
+            public void onSubscribe(TSSubscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(TSEvent item) {
+                events.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        timeSense.trigger(this.morningDate);
+        assertEquals("Events should be triggered and entered", 2, events.size());
+        assertEquals("Entered rule should be morning", TSRule.TS_RULE_NAME_MORNING, events.get(1).getRule().getName());
+        assertEquals("Triggered event should have trigger time", this.morningDate.getTime(), events.get(0).getTime());
+
+        timeSense.removePublisher(publisher);
+        timeSense.trigger(this.afternoonDate);
+        assertEquals("Removed publisher should not publish", 2, events.size());
+    }
+
+    @Test
+    public void setClock() throws Exception {
+        TSVirtualClock clock = new TSVirtualClock(this.morningDate.getTime());
+        TimeSense timeSense = new TimeSense(TSConfiguration.defaultConfiguration());
+        timeSense.setClock(clock);
+        TSEventPublisher publisher = timeSense.createPublisher();
+        final ArrayList<TSEvent> events = new ArrayList<TSEvent>();
+        publisher.subscribe(new TSSubscriber<TSEvent>() {
+            @Override
+            public void onSubscribe(TSSubscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(TSEvent item) {
+                events.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertTrue("Time should be morning", timeSense.isMorning());
+        assertEquals("Detected rule should be morning rule", TSRule.TS_RULE_NAME_MORNING, timeSense.detect().get(0).getName());
+
+        clock.setTime(this.nightDate.getTime());
+        timeSense.trigger();
+
+        assertTrue("Time should be night", timeSense.isNight());
+        assertEquals("Period should be night", TSPeriod.NIGHT, timeSense.classify());
+        assertEquals("Triggered event should have clock time", this.nightDate.getTime(), events.get(0).getTime());
+    }
+
     @Test
     public void triggerMatchWithTime() throws Exception {
         TSRule rule = TSRule.morning();
@@ -290,4 +560,137 @@ public class TimeSenseUnitTest {
         verify(this.listener, times(0)).timeSenseTriggered(rule.getName());
     }
 
+    @Test
+    public void triggerMatchIndexedListenerWithUnknownRule() throws Exception {
+        TimeSense timeSense = new TimeSense(TSConfiguration.defaultConfiguration());
+        timeSense.addListener(TSRule.TS_RULE_NAME_MORNING, this.indexedListener);
+
+        timeSense.triggerMatch(TSRule.morning(), this.morningDate);
+        verify(this.indexedListener, times(0)).timeSenseTriggered(-1);
+        verify(this.indexedListener, times(1)).timeSenseTriggered(TSRule.TS_RULE_NAME_MORNING);
+    }
+
+    @Test
+    public void triggerEdgeTriggered() throws Exception {
+        TSRule rule = TSRule.morning();
+
+        TimeSense.getInstance().setConfiguration(TSConfiguration.defaultConfiguration());
+        TimeSense.getInstance().setEdgeTriggered(true);
+        TimeSense.getInstance().trigger(this.nightDate);
+        TimeSense.getInstance().addListener(this.listener);
+        TimeSense.getInstance().addListener(rule.getName(), this.listener);
+
+        TimeSense.getInstance().trigger(this.morningDate);
+        TimeSense.getInstance().trigger(this.morningDate);
+        verify(this.listener, times(1)).timeSenseTriggered();
+        verify(this.listener, times(1)).timeSenseTriggered(rule.getName());
+    }
+
+    @Test
+    public void triggerTransitionListener() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        TSRule morning = configuration.findRule(TSRule.TS_RULE_NAME_MORNING);
+        TSRule afternoon = configuration.findRule(TSRule.TS_RULE_NAME_AFTERNOON);
+
+        TimeSense.getInstance().setConfiguration(configuration);
+        TimeSense.getInstance().trigger(this.morningDate);
+        TimeSense.getInstance().addListener(this.transitionListener);
+
+        TimeSense.getInstance().trigger(this.morningDate);
+        verify(this.transitionListener, times(0)).timeSenseEntered(morning, this.morningDate.getTime());
+
+        TimeSense.getInstance().trigger(this.afternoonDate);
+        verify(this.transitionListener, times(1)).timeSenseExited(morning, this.afternoonDate.getTime());
+        verify(this.transitionListener, times(1)).timeSenseEntered(afternoon, this.afternoonDate.getTime());
+    }
+
+    @Test
+    public void triggerAsyncDispatch() throws Exception {
+        final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        TimeSense timeSense = new TimeSense(TSConfiguration.defaultConfiguration());
+        timeSense.setAsyncDispatch(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, 16, TSOverflowPolicy.DROP_OLDEST);
+        timeSense.addListener(this.listener);
+        timeSense.addListener(TSRule.TS_RULE_NAME_MORNING, this.listener);
+
+        timeSense.trigger(this.morningDate);
+        verify(this.listener, times(0)).timeSenseTriggered(TSRule.TS_RULE_NAME_MORNING);
+        assertEquals("Listener should share one queue", 1, tasks.size());
+
+        tasks.remove(0).run();
+        verify(this.listener, times(1)).timeSenseTriggered(TSRule.TS_RULE_NAME_MORNING);
+        verify(this.listener, times(1)).timeSenseTriggered();
+
+        timeSense.removeListener(this.listener);
+        timeSense.trigger(this.morningDate);
+        assertEquals("Removed listener should not be queued", 0, tasks.size());
+    }
+
+    @Test
+    public void metricsWithAsyncDispatch() throws Exception {
+        final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        TSAtomicMetrics metrics = new TSAtomicMetrics();
+        TimeSense timeSense = new TimeSense(TSConfiguration.defaultConfiguration());
+        timeSense.setMetrics(metrics);
+        timeSense.setAsyncDispatch(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, 16, TSOverflowPolicy.DROP_OLDEST);
+        timeSense.addListener(this.listener);
+        timeSense.addListener(TSRule.TS_RULE_NAME_MORNING, this.listener);
+
+        timeSense.trigger(this.morningDate);
+        assertEquals("Queued callbacks should not be measured", 0, metrics.getDispatchCount());
+
+        tasks.remove(0).run();
+        assertEquals("Dispatch count should be two", 2, metrics.getDispatchCount());
+        assertEquals("Listener latency count should be two", 2, metrics.getDispatchLatency(this.listener).getCount());
+    }
+
+    @Test
+    public void triggerConcurrently() throws Exception {
+        final TimeSense timeSense = TimeSense.getInstance();
+        timeSense.setConfiguration(TSConfiguration.defaultConfiguration());
+        timeSense.addListener(TSRule.TS_RULE_NAME_MORNING, this.listener);
+
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final boolean isWriter = i == 0;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < 500; n++) {
+                            if (isWriter) {
+                                TSListener other = new TSListener() {
+                                    public void timeSenseTriggered() {}
+                                    public void timeSenseTriggered(String ruleName) {}
+                                };
+                                timeSense.addListener(other);
+                                timeSense.addRule("RULE_" + n, morningDate, afternoonDate);
+                                timeSense.removeListener(other);
+                            } else {
+                                timeSense.trigger(morningDate);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread: threads) thread.join();
+
+        assertNull("Concurrent trigger should not fail", failure[0]);
+        verify(this.listener, times(1500)).timeSenseTriggered(TSRule.TS_RULE_NAME_MORNING);
+    }
+
 }
\ No newline at end of file
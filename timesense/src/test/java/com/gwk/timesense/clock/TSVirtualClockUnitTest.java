@@ -0,0 +1,176 @@
+package com.gwk.timesense.clock;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.index.TSTransition;
+import com.gwk.timesense.listener.TSTransitionListener;
+import com.gwk.timesense.rule.TSCompiledRule;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSVirtualClock class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSVirtualClockUnitTest {
+
+    private static class RecordingListener implements TSTransitionListener {
+        private final ArrayList<String> events = new ArrayList<String>();
+
+        @Override
+        public void timeSenseEntered(TSRule rule, long time) {
+            this.events.add("+" + rule.getName() + "@" + time);
+        }
+
+        @Override
+        public void timeSenseExited(TSRule rule, long time) {
+            this.events.add("-" + rule.getName() + "@" + time);
+        }
+    }
+
+    private long start;
+
+    @Before
+    public void setUp() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        this.start = calendar.getTimeInMillis();
+    }
+
+    private TimeSense timeSense(TSVirtualClock clock, TSTransitionListener listener) {
+        TimeSense timeSense = new TimeSense(TSConfiguration.defaultConfiguration());
+        timeSense.setClock(clock);
+        timeSense.addListener(listener);
+        return timeSense;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void runTransitionsWithoutProgress() throws Exception {
+        final TSVirtualClock clock = new TSVirtualClock(this.start);
+        TimeSense timeSense = new TimeSense(TSConfiguration.defaultConfiguration()) {
+            @Override
+            public TSTransition nextTransition() {
+                return new TSTransition(new Date(clock.currentTimeMillis()), new ArrayList<TSRule>(), new ArrayList<TSRule>());
+            }
+        };
+        timeSense.setClock(clock);
+
+        clock.runTransitions(timeSense, this.start + TSCompiledRule.DAY_MILLIS);
+    }
+
+    @Test
+    public void runTransitionsAcrossDaylightSavingGap() throws Exception {
+        TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+        Calendar calendar = Calendar.getInstance(newYork);
+        calendar.clear();
+        calendar.set(2026, Calendar.MARCH, 7, 2, 30);
+        Date start = calendar.getTime();
+        calendar.set(Calendar.HOUR_OF_DAY, 5);
+        calendar.set(Calendar.MINUTE, 0);
+        TSConfiguration configuration = new TSConfiguration();
+        configuration.addRule("EARLY_RULE", start, calendar.getTime());
+        calendar.set(2026, Calendar.MARCH, 7, 0, 0);
+        TSVirtualClock clock = new TSVirtualClock(calendar.getTimeInMillis());
+        RecordingListener listener = new RecordingListener();
+        TimeSense timeSense = new TimeSense(configuration);
+        timeSense.setTimeZone(newYork);
+        timeSense.setClock(clock);
+        timeSense.addListener(listener);
+
+        calendar.set(2026, Calendar.MARCH, 10, 0, 0);
+        assertEquals("Rule should be entered and exited every day", 6, clock.runTransitions(timeSense, calendar.getTimeInMillis()));
+        assertEquals("Events size should be six", 6, listener.events.size());
+    }
+
+    @Test
+    public void advance() throws Exception {
+        TSVirtualClock clock = new TSVirtualClock(this.start);
+
+        assertEquals("Time should be start time", this.start, clock.currentTimeMillis());
+        assertEquals("Time should be advanced", this.start + 1000, clock.advance(1000));
+
+        clock.setTime(this.start);
+        assertEquals("Time should be set", this.start, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void run() throws Exception {
+        TSVirtualClock clock = new TSVirtualClock(this.start);
+        RecordingListener listener = new RecordingListener();
+        TimeSense timeSense = this.timeSense(clock, listener);
+
+        long ticks = clock.run(timeSense, this.start + 24 * 60 * 60 * 1000L, 60 * 1000L);
+
+        assertEquals("Ticks should be one per minute", 24 * 60, ticks);
+        assertEquals("Clock should reach end time", this.start + 24 * 60 * 60 * 1000L, clock.currentTimeMillis());
+        assertEquals("First event should enter night rule", "+" + TSRule.TS_RULE_NAME_NIGHT + "@" + (this.start + 60 * 1000L), listener.events.get(0));
+        assertEquals("Every rule should be exited and entered once a day", 9, listener.events.size());
+    }
+
+    @Test
+    public void runTransitions() throws Exception {
+        long end = this.start + 3 * 24 * 60 * 60 * 1000L;
+        TSVirtualClock tickClock = new TSVirtualClock(this.start);
+        RecordingListener tickListener = new RecordingListener();
+        tickClock.run(this.timeSense(tickClock, tickListener), end, 60 * 1000L);
+
+        TSVirtualClock clock = new TSVirtualClock(this.start);
+        RecordingListener listener = new RecordingListener();
+        TimeSense timeSense = this.timeSense(clock, listener);
+        timeSense.trigger();
+        listener.events.clear();
+        tickListener.events.remove(0);
+
+        long transitions = clock.runTransitions(timeSense, end);
+
+        assertEquals("Transitions should be four a day", 12, transitions);
+        assertEquals("Events should be equal to ticking clock", tickListener.events, listener.events);
+        assertEquals("Clock should reach end time", end, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void runTransitionsWithTarget() throws Exception {
+        final TSVirtualClock clock = new TSVirtualClock(this.start);
+        final ArrayList<Long> triggers = new ArrayList<Long>();
+        TSClockTarget target = new TSClockTarget() {
+            @Override
+            public TSClock getClock() {
+                return clock;
+            }
+
+            @Override
+            public TSTransition nextTransition() {
+                long next = clock.currentTimeMillis() + 1000;
+                return new TSTransition(new Date(next), new ArrayList<TSRule>(), new ArrayList<TSRule>());
+            }
+
+            @Override
+            public void trigger() {
+                triggers.add(clock.currentTimeMillis());
+            }
+        };
+
+        assertEquals("Transitions should be three", 3, clock.runTransitions(target, this.start + 3500));
+        assertEquals("Target should be triggered at every transition", this.start + 3000, (long) triggers.get(2));
+        assertEquals("Clock should reach end time", this.start + 3500, clock.currentTimeMillis());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void runWithOtherClock() throws Exception {
+        new TSVirtualClock(this.start).run(new TimeSense(), this.start + 1000, 1);
+    }
+}
@@ -0,0 +1,95 @@
+package com.gwk.timesense.configuration;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSCompiledConfiguration class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSCompiledConfigurationUnitTest {
+
+    private TSRule morning;
+    private TSCompiledConfiguration configuration;
+
+    @Before
+    public void setUp() throws Exception {
+        this.morning = TSRule.morning();
+        this.configuration = TSConfiguration.create().addRule(this.morning).addRule(TSRule.night()).compile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.configuration = null;
+    }
+
+    @Test
+    public void compile() throws Exception {
+        TSRule rule = this.configuration.findRule(TSRule.TS_RULE_NAME_MORNING);
+
+        assertNotSame("Rule should be copied", this.morning, rule);
+        assertTrue("Rule should be frozen", rule.isFrozen());
+        assertEquals("Rule should be equal", this.morning, rule);
+        assertEquals("Night rule id should be one", 1, this.configuration.getRuleId(this.configuration.findRule(TSRule.TS_RULE_NAME_NIGHT)));
+        assertTrue("Index should be built from configuration", this.configuration.getIndex().isBuiltFrom(this.configuration));
+    }
+
+    @Test
+    public void builderChangesNotShared() throws Exception {
+        this.morning.getStartTime().setTime(0);
+        this.configuration.getRules().clear();
+
+        assertEquals("Rules size should be two", 2, this.configuration.getRules().size());
+        assertNotEquals("Compiled rule should keep its time", 0, this.configuration.findRule(TSRule.TS_RULE_NAME_MORNING).getStartTime().getTime());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void addRule() throws Exception {
+        this.configuration.addRule(TSRule.evening());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void removeRule() throws Exception {
+        this.configuration.removeRule(TSRule.TS_RULE_NAME_MORNING);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void updateFrozenRule() throws Exception {
+        this.configuration.findRule(TSRule.TS_RULE_NAME_MORNING).setStartTime(new Date());
+    }
+
+    @Test
+    public void copy() throws Exception {
+        TSConfiguration copy = new TSConfiguration(this.configuration);
+        copy.updateRule(TSRule.TS_RULE_NAME_MORNING, new Date(), new Date());
+        copy.addRule(TSRule.evening());
+
+        assertEquals("Copy rules size should be three", 3, copy.getRules().size());
+        assertTrue("Compiled rule should stay frozen", this.configuration.findRule(TSRule.TS_RULE_NAME_MORNING).isFrozen());
+        assertEquals("Compiled rule should not change", this.morning, this.configuration.findRule(TSRule.TS_RULE_NAME_MORNING));
+    }
+
+    @Test
+    public void sharedIndex() throws Exception {
+        TimeSense first = new TimeSense(this.configuration);
+        TimeSense second = new TimeSense(this.configuration);
+
+        assertSame("Engine should use compiled index", this.configuration.getIndex(), first.getIndex());
+        assertSame("Engine should use compiled index", this.configuration.getIndex(), second.getIndex());
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 9);
+        assertEquals("Detected rule should be morning rule", TSRule.TS_RULE_NAME_MORNING, first.detect(calendar.getTime()).get(0).getName());
+    }
+}
@@ -9,6 +9,7 @@ import org.junit.Test;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -91,6 +92,16 @@ public class TSConfigurationUnitTest {
         assertEquals("Rules in each configuration should be equal", configuration1.getRules(), configuration2.getRules());
     }
 
+    @Test
+    public void getRulesCopy() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        int version = configuration.getVersion();
+        configuration.getRules().clear();
+
+        assertEquals("Rules size should be four", 4, configuration.getRules().size());
+        assertEquals("Version should not change", version, configuration.getVersion());
+    }
+
     @Test
     public void setRules() throws Exception {
         TSConfiguration configuration1 = TSConfiguration.defaultConfiguration();
@@ -184,4 +195,185 @@ public class TSConfigurationUnitTest {
         assertEquals("Name should be equal", TSRule.TS_RULE_NAME_MORNING, rule.getName());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void ruleId() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        TSRule night = configuration.findRule(TSRule.TS_RULE_NAME_NIGHT);
+
+        assertEquals("Morning rule id should be zero", 0, configuration.getRuleId(configuration.findRule(TSRule.TS_RULE_NAME_MORNING)));
+        assertEquals("Night rule id should be three", 3, configuration.getRuleId(night));
+
+        TSRule afternoon = configuration.findRule(TSRule.TS_RULE_NAME_AFTERNOON);
+        configuration.removeRule(TSRule.TS_RULE_NAME_AFTERNOON);
+
+        assertEquals("Removed rule id should be reset", -1, configuration.getRuleId(afternoon));
+        assertEquals("Night rule id should be two", 2, configuration.getRuleId(night));
+        assertSame("Rule id should be rule position", night, configuration.getRules().get(configuration.getRuleId(night)));
+    }
+
+    @Test
+    public void ruleIdOfSharedRule() throws Exception {
+        TSConfiguration configuration1 = TSConfiguration.defaultConfiguration();
+        TSRule night = configuration1.findRule(TSRule.TS_RULE_NAME_NIGHT);
+        TSConfiguration configuration2 = new TSConfiguration();
+        configuration2.addRule(night);
+
+        assertEquals("Night rule id should be three in first configuration", 3, configuration1.getRuleId(night));
+        assertEquals("Night rule id should be zero in second configuration", 0, configuration2.getRuleId(night));
+
+        configuration2.removeRule(TSRule.TS_RULE_NAME_NIGHT);
+
+        assertEquals("Night rule id should be kept in first configuration", 3, configuration1.getRuleId(night));
+        assertEquals("Night rule should not be registered in second configuration", -1, configuration2.getRuleId(night));
+    }
+
+    @Test
+    public void findRuleAfterRemove() throws Exception {
+        Date now = new Date();
+
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        configuration.addRule(TSRule.TS_RULE_NAME_MORNING, now, now);
+        configuration.removeRule(TSRule.TS_RULE_NAME_MORNING);
+        TSRule rule = configuration.findRule(TSRule.TS_RULE_NAME_MORNING);
+
+        assertNotNull("Rule with same name should be found", rule);
+        assertEqualDates(now, rule.getStartTime());
+
+        configuration.removeRule(TSRule.TS_RULE_NAME_MORNING);
+
+        assertNull("Rule should be removed", configuration.findRule(TSRule.TS_RULE_NAME_MORNING));
+        assertEquals("Rules size should be three", 3, configuration.getRules().size());
+    }
+
+    @Test
+    public void addRuleAfterUpdate() throws Exception {
+        TSRule morning = TSRule.morning();
+        TSRule night = TSRule.night();
+
+        TSConfiguration configuration = new TSConfiguration();
+        configuration.addRule(morning);
+        configuration.updateRule(TSRule.TS_RULE_NAME_MORNING, night.getStartTime(), night.getEndTime());
+        configuration.addRule(new TSRule(TSRule.TS_RULE_NAME_MORNING, night.getStartTime(), night.getEndTime()));
+
+        assertEquals("Rules size should be one", 1, configuration.getRules().size());
+
+        configuration.addRule(TSRule.morning());
+
+        assertEquals("Rules size should be two", 2, configuration.getRules().size());
+    }
+
+    @Test
+    public void updateRuleToDuplicate() throws Exception {
+        TSRule night = TSRule.night();
+        TSConfiguration configuration = new TSConfiguration();
+        configuration.addRule(TSRule.TS_RULE_NAME_NIGHT, TSRule.morning().getStartTime(), TSRule.morning().getEndTime());
+        configuration.addRule(night);
+
+        assertFalse("Update to duplicate should be rejected", configuration.updateRule(TSRule.TS_RULE_NAME_NIGHT, night.getStartTime(), night.getEndTime()));
+        assertEquals("Rules size should be two", 2, configuration.getRules().size());
+
+        configuration.removeRule(TSRule.TS_RULE_NAME_NIGHT);
+        configuration.addRule(TSRule.night());
+
+        assertEquals("Duplicate should not be added", 1, configuration.getRules().size());
+    }
+
+    @Test
+    public void changeRegisteredRule() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        TSRule morning = configuration.findRule(TSRule.TS_RULE_NAME_MORNING);
+        TSRule night = configuration.findRule(TSRule.TS_RULE_NAME_NIGHT);
+        int version = configuration.getVersion();
+
+        morning.setName("RENAMED");
+        assertTrue("Version should be increased", configuration.getVersion() > version);
+        assertNull("Old name should not be found", configuration.findRule(TSRule.TS_RULE_NAME_MORNING));
+        assertSame("New name should be found", morning, configuration.findRule("RENAMED"));
+
+        configuration.addRule(TSRule.morning());
+        assertEquals("Rule with free key should be added", 5, configuration.getRules().size());
+
+        night.setStartTime(TSRule.afternoon().getStartTime());
+        night.setEndTime(TSRule.afternoon().getEndTime());
+        configuration.addRule(TSRule.night());
+        assertEquals("Rule with key freed by change should be added", 6, configuration.getRules().size());
+        assertTrue("Changed rule should overlap afternoon", configuration.findOverlappingRules(night).contains(configuration.findRule(TSRule.TS_RULE_NAME_AFTERNOON)));
+
+        configuration.removeRule("RENAMED");
+        assertEquals("Renamed rule should be removed", 5, configuration.getRules().size());
+        assertEquals("Renamed rule should not have id", -1, configuration.getRuleId(morning));
+    }
+
+    @Test
+    public void removeRulesBulk() throws Exception {
+        Random random = new Random(7);
+        ArrayList<TSRule> expected = new ArrayList<TSRule>();
+        TSConfiguration configuration = new TSConfiguration();
+        for (int i = 0; i < 2000; i++) {
+            TSRule rule = new TSRule("RULE_" + random.nextInt(500), new Date(0), new Date(i * 1000L));
+            configuration.addRule(rule);
+            expected.add(rule);
+            if (random.nextBoolean()) {
+                String name = "RULE_" + random.nextInt(500);
+                for (int id = 0; id < expected.size(); id++) {
+                    if (expected.get(id).getName().equals(name)) {
+                        expected.remove(id);
+                        break;
+                    }
+                }
+                configuration.removeRule(name);
+            }
+        }
+
+        assertEquals("Rules should be in configuration order", expected, configuration.getRules());
+        for (int id = 0; id < expected.size(); id++) {
+            assertEquals("Rule id should be rule position", id, configuration.getRuleId(expected.get(id)));
+        }
+    }
+
+    @Test
+    public void addRulesBulk() throws Exception {
+        Date start = new Date(0);
+        ArrayList<TSRule> rules = new ArrayList<TSRule>();
+        for (int i = 0; i < 100000; i++) {
+            rules.add(new TSRule("RULE_" + i, start, new Date(i * 1000L)));
+        }
+        rules.add(new TSRule("RULE_0", start, new Date(0)));
+
+        TSConfiguration configuration = new TSConfiguration();
+        configuration.addRules(rules);
+
+        assertEquals("Duplicate rule should be skipped", 100000, configuration.getRules().size());
+        assertEquals("Rule should be found by name", rules.get(99999), configuration.findRule("RULE_99999"));
+    }
+
+    @Test
+    public void findOverlappingRules() throws Exception {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+
+        assertFalse("Default rules should not overlap", configuration.hasOverlappingRules());
+
+        TSRule afternoon = configuration.getRules().get(1);
+        TSRule evening = configuration.getRules().get(2);
+        TSRule night = configuration.getRules().get(3);
+        TSRule custom = new TSRule("CUSTOM_RULE", evening.getStartTime(), night.getEndTime());
+        configuration.addRule(custom);
+
+        assertTrue("Custom rule should overlap", configuration.hasOverlappingRules());
+        ArrayList<TSRule> rules = configuration.findOverlappingRules(custom);
+        assertEquals("Rules size should be two", 2, rules.size());
+        assertEquals("First rule should be evening rule", evening, rules.get(0));
+        assertEquals("Second rule should be night rule", night, rules.get(1));
+        assertEquals("Night rule should overlap custom rule", custom, configuration.findOverlappingRules(night).get(0));
+        assertEquals("Afternoon rule should not overlap", 0, configuration.findOverlappingRules(afternoon).size());
+
+        configuration.updateRule("CUSTOM_RULE", afternoon.getStartTime(), afternoon.getEndTime());
+
+        assertEquals("Updated rule should overlap afternoon rule", afternoon, configuration.findOverlappingRules(custom).get(0));
+
+        configuration.removeRule("CUSTOM_RULE");
+
+        assertFalse("Rules should not overlap after removal", configuration.hasOverlappingRules());
+        assertEquals("Afternoon rule should not overlap", 0, configuration.findOverlappingRules(afternoon).size());
+    }
+}
@@ -0,0 +1,131 @@
+package com.gwk.timesense.configuration;
+
+import com.gwk.timesense.rule.TSCompiledRule;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSOverlapTree class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSOverlapTreeUnitTest {
+
+    private TimeZone timeZone;
+    private Random random;
+    private IdentityHashMap<TSRule, Integer> ids;
+
+    @Before
+    public void setUp() throws Exception {
+        this.timeZone = TimeZone.getTimeZone("UTC");
+        this.random = new Random(11);
+        this.ids = new IdentityHashMap<TSRule, Integer>();
+    }
+
+    private TSRule rule(int id, int startHour, int endHour) {
+        TSRule rule = new TSRule("RULE_" + id, new Date(startHour * 60 * 60 * 1000L), new Date(endHour * 60 * 60 * 1000L));
+        this.ids.put(rule, id);
+        return rule;
+    }
+
+    private TSRule randomRule(int id) {
+        long start = this.random.nextInt((int) TSCompiledRule.DAY_MILLIS / 60000) * 60000L;
+        long end = this.random.nextInt((int) TSCompiledRule.DAY_MILLIS / 60000) * 60000L;
+        TSRule rule = new TSRule("RULE_" + id, new Date(start), new Date(end));
+        this.ids.put(rule, id);
+        return rule;
+    }
+
+    private ArrayList<TSRule> sorted(ArrayList<TSRule> rules) {
+        Collections.sort(rules, new Comparator<TSRule>() {
+            @Override
+            public int compare(TSRule rule1, TSRule rule2) {
+                return TSOverlapTreeUnitTest.this.ids.get(rule1) - TSOverlapTreeUnitTest.this.ids.get(rule2);
+            }
+        });
+        return rules;
+    }
+
+    private boolean overlaps(TSRule rule1, TSRule rule2) {
+        TSCompiledRule compiled1 = rule1.compile(this.timeZone);
+        TSCompiledRule compiled2 = rule2.compile(this.timeZone);
+        return rule1 != rule2 && compiled1.getStartOffset() != compiled1.getEndOffset() && compiled2.getStartOffset() != compiled2.getEndOffset()
+                && (compiled1.contains(compiled2.getStartOffset()) || compiled2.contains(compiled1.getStartOffset()));
+    }
+
+    @Test
+    public void find() throws Exception {
+        ArrayList<TSRule> rules = new ArrayList<TSRule>();
+        rules.add(this.rule(0, 4, 11));
+        rules.add(this.rule(1, 11, 17));
+        rules.add(this.rule(2, 21, 4));
+        rules.add(this.rule(3, 23, 0));
+        TSOverlapTree tree = new TSOverlapTree(rules, this.timeZone);
+
+        assertEquals("Overlap count should be one", 1, tree.getOverlapCount());
+        assertEquals("Overnight rule should overlap rule ending at midnight", rules.get(3), tree.find(rules.get(2)).get(0));
+        assertEquals("Adjacent rules should not overlap", 0, tree.find(rules.get(1)).size());
+
+        ArrayList<TSRule> found = this.sorted(tree.find(this.rule(4, 3, 12)));
+        assertEquals("Rules size should be three", 3, found.size());
+        assertEquals("Rules should be in id order", rules.get(0), found.get(0));
+        assertEquals("Rules should be in id order", rules.get(1), found.get(1));
+        assertEquals("Rules should be in id order", rules.get(2), found.get(2));
+
+        assertEquals("Empty rule should not overlap", 0, tree.find(this.rule(5, 5, 5)).size());
+    }
+
+    @Test
+    public void findOvernightOnce() throws Exception {
+        ArrayList<TSRule> rules = new ArrayList<TSRule>();
+        rules.add(this.rule(0, 22, 6));
+        rules.add(this.rule(1, 12, 13));
+        TSOverlapTree tree = new TSOverlapTree(rules, this.timeZone);
+
+        ArrayList<TSRule> found = tree.find(this.rule(2, 20, 8));
+        assertEquals("Overnight rule should be found once through both intervals", 1, found.size());
+        assertEquals("Overnight rule should be found", rules.get(0), found.get(0));
+        assertEquals("Overnight rule should be found again by next query", 1, tree.find(this.rule(3, 23, 5)).size());
+
+        tree.add(this.rule(4, 21, 7));
+        assertEquals("Overlap count should count overnight pair once", 1, tree.getOverlapCount());
+    }
+
+    @Test
+    public void addAndRemove() throws Exception {
+        ArrayList<TSRule> rules = new ArrayList<TSRule>();
+        TSOverlapTree tree = new TSOverlapTree(rules, this.timeZone);
+        for (int id = 0; id < 300; id++) {
+            TSRule rule = this.randomRule(id);
+            rules.add(rule);
+            tree.add(rule);
+        }
+        for (int i = 0; i < 100; i++) {
+            tree.remove(rules.remove(this.random.nextInt(rules.size())));
+        }
+
+        int pairs = 0;
+        for (TSRule rule: rules) {
+            ArrayList<TSRule> expected = new ArrayList<TSRule>();
+            for (TSRule other: rules) {
+                if (this.overlaps(rule, other)) expected.add(other);
+            }
+            assertEquals("Overlapping rules should be equal to pairwise check", expected, this.sorted(tree.find(rule)));
+            pairs += expected.size();
+        }
+        assertEquals("Overlap count should be equal to pairwise check", pairs / 2, tree.getOverlapCount());
+    }
+}
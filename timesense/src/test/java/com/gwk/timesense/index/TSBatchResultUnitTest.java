@@ -0,0 +1,77 @@
+package com.gwk.timesense.index;
+
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSBatchResult class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSBatchResultUnitTest {
+
+    private TSRuleIndex index;
+    private long[] times;
+
+    @Before
+    public void setUp() throws Exception {
+        this.index = new TSRuleIndex(TSConfiguration.defaultConfiguration(), TimeZone.getDefault(), TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(new Date());
+        calendar.set(Calendar.MINUTE, 30);
+        int[] hours = {9, 13, 18, 2};
+        this.times = new long[hours.length];
+        for (int i = 0; i < hours.length; i++) {
+            calendar.set(Calendar.HOUR_OF_DAY, hours[i]);
+            this.times[i] = calendar.getTimeInMillis();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.index = null;
+        this.times = null;
+    }
+
+    @Test
+    public void detect() throws Exception {
+        TSBatchResult result = new TSBatchResult(this.times.length, this.index.getRuleCount());
+        this.index.detect(this.times, result);
+
+        assertEquals("Result size should be four", 4, result.getSize());
+        for (int event = 0; event < this.times.length; event++) {
+            assertEquals("Event should match one rule", 1, result.getMatchCount(event));
+            assertTrue("Event should match rule in same position", result.isMatch(event, event));
+            assertEquals("Next match should be rule in same position", event, result.nextMatch(event, 0));
+            assertEquals("There should be no other match", -1, result.nextMatch(event, event + 1));
+        }
+        assertEquals("Night rule name should be equal", TSRule.TS_RULE_NAME_NIGHT, this.index.getRule(result.nextMatch(3, 0)).getName());
+    }
+
+    @Test
+    public void detectGrow() throws Exception {
+        TSBatchResult result = new TSBatchResult(1, 1);
+        this.index.detect(this.times, result);
+
+        assertEquals("Result size should be four", 4, result.getSize());
+        assertTrue("Result should grow to hold every event", result.getBits().length >= 4);
+        assertTrue("Last event should match night rule", result.isMatch(3, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorWithOverflowingSize() throws Exception {
+        new TSBatchResult(1 << 20, 1 << 20);
+    }
+}
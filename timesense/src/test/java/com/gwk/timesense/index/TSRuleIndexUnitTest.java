@@ -0,0 +1,298 @@
+package com.gwk.timesense.index;
+
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.rule.TSCompiledRule;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSRuleIndex class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSRuleIndexUnitTest {
+
+    private TimeZone timeZone;
+    private Calendar calendar;
+
+    @Before
+    public void setUp() throws Exception {
+        this.timeZone = TimeZone.getDefault();
+        this.calendar = Calendar.getInstance();
+        this.calendar.setTime(new Date());
+        this.calendar.set(Calendar.MINUTE, 0);
+        this.calendar.set(Calendar.SECOND, 0);
+        this.calendar.set(Calendar.MILLISECOND, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.calendar = null;
+    }
+
+    private long time(int hour, int minute) {
+        this.calendar.set(Calendar.HOUR_OF_DAY, hour);
+        this.calendar.set(Calendar.MINUTE, minute);
+        return this.calendar.getTimeInMillis();
+    }
+
+    private TSConfiguration customConfiguration() {
+        TSConfiguration configuration = TSConfiguration.defaultConfiguration();
+        configuration.addRule("CUSTOM_RULE", new Date(this.time(15, 0)), new Date(this.time(23, 0)));
+        return configuration;
+    }
+
+    @Test
+    public void detect() throws Exception {
+        TSRuleIndex index = new TSRuleIndex(this.customConfiguration(), this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        ArrayList<TSRule> rules = index.detect(this.time(9, 0));
+        assertEquals("Rules size should be one", 1, rules.size());
+        assertEquals("Detected rule should be morning rule", TSRule.TS_RULE_NAME_MORNING, rules.get(0).getName());
+
+        rules = index.detect(this.time(22, 0));
+        assertEquals("Rules size should be two", 2, rules.size());
+        assertEquals("Detected rule should be night rule", TSRule.TS_RULE_NAME_NIGHT, rules.get(0).getName());
+        assertEquals("Detected rule should be custom rule", "CUSTOM_RULE", rules.get(1).getName());
+
+        rules = index.detect(this.time(2, 0));
+        assertEquals("Rules size should be one", 1, rules.size());
+        assertEquals("Detected rule should be night rule", TSRule.TS_RULE_NAME_NIGHT, rules.get(0).getName());
+    }
+
+    @Test
+    public void detectWithCoarseResolution() throws Exception {
+        TSRuleIndex index = new TSRuleIndex(this.customConfiguration(), this.timeZone, 6 * 60 * 60 * 1000);
+
+        assertEquals("Rules size should be one", 1, index.detect(this.time(14, 59)).size());
+        assertEquals("Rules size should be two", 2, index.detect(this.time(15, 0)).size());
+        assertEquals("Rules size should be one", 1, index.detect(this.time(23, 0)).size());
+    }
+
+    @Test
+    public void detectBits() throws Exception {
+        TSRuleIndex index = new TSRuleIndex(this.customConfiguration(), this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        long[] bits = new long[index.getWords() + 1];
+
+        index.detect(this.time(16, 0), bits, 1);
+        assertEquals("Bits should be afternoon and custom rule", (1L << 1) | (1L << 4), bits[1]);
+    }
+
+    @Test
+    public void isBuiltFrom() throws Exception {
+        TSConfiguration configuration = this.customConfiguration();
+        TSRuleIndex index = new TSRuleIndex(configuration, this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        assertTrue("Index should be built from configuration", index.isBuiltFrom(configuration));
+
+        configuration.removeRule("CUSTOM_RULE");
+
+        assertFalse("Index should be stale", index.isBuiltFrom(configuration));
+    }
+
+    @Test
+    public void nextTransition() throws Exception {
+        TSRuleIndex index = new TSRuleIndex(this.customConfiguration(), this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        TSTransition transition = index.nextTransition(this.time(12, 0));
+        assertEquals("Transition should be at 15:00", this.time(15, 0), transition.getTime().getTime());
+        assertEquals("Custom rule should be entered", "CUSTOM_RULE", transition.getEnteredRules().get(0).getName());
+        assertEquals("No rule should be exited", 0, transition.getExitedRules().size());
+
+        transition = index.nextTransition(this.time(23, 0));
+        this.calendar.add(Calendar.DATE, 1);
+        long nextDay = this.time(4, 0);
+        assertEquals("Transition should be at 04:00 next day", nextDay / 1000, transition.getTime().getTime() / 1000);
+        assertEquals("Night rule should be exited", TSRule.TS_RULE_NAME_NIGHT, transition.getExitedRules().get(0).getName());
+        assertEquals("Morning rule should be entered", TSRule.TS_RULE_NAME_MORNING, transition.getEnteredRules().get(0).getName());
+    }
+
+    @Test
+    public void nextTransitionInDaylightSavingGap() throws Exception {
+        TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+        Calendar calendar = Calendar.getInstance(newYork);
+        calendar.clear();
+        calendar.set(2026, Calendar.JANUARY, 10, 2, 30);
+        Date start = calendar.getTime();
+        calendar.set(Calendar.HOUR_OF_DAY, 5);
+        calendar.set(Calendar.MINUTE, 0);
+        TSConfiguration configuration = new TSConfiguration();
+        configuration.addRule("EARLY_RULE", start, calendar.getTime());
+        TSRuleIndex index = new TSRuleIndex(configuration, newYork, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        calendar.set(2026, Calendar.MARCH, 8, 1, 59);
+        long after = calendar.getTimeInMillis();
+        calendar.set(Calendar.HOUR_OF_DAY, 3);
+        calendar.set(Calendar.MINUTE, 0);
+        TSTransition transition = index.nextTransition(after);
+
+        assertEquals("Skipped boundary should be at end of gap", calendar.getTimeInMillis(), transition.getTime().getTime());
+        assertEquals("Rule should be entered", "EARLY_RULE", transition.getEnteredRules().get(0).getName());
+
+        for (int month: new int[] {Calendar.MARCH, Calendar.NOVEMBER}) {
+            calendar.set(2026, month, 1, 0, 0);
+            long time = calendar.getTimeInMillis();
+            for (int i = 0; i < 20; i++) {
+                long next = index.nextTransition(time).getTime().getTime();
+                assertTrue("Transition should be after time", next > time);
+                assertTrue("Transition should be within a day", next - time <= TSCompiledRule.DAY_MILLIS);
+                time = next;
+            }
+        }
+    }
+
+    @Test
+    public void nextTransitionWithoutRules() throws Exception {
+        TSRuleIndex index = new TSRuleIndex(new TSConfiguration(), this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        assertNull("Transition should be null", index.nextTransition(this.time(12, 0)));
+    }
+
+    @Test
+    public void getTimeSpent() throws Exception {
+        TSConfiguration configuration = this.customConfiguration();
+        TSRuleIndex index = new TSRuleIndex(configuration, this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        long from = this.time(0, 0);
+        this.calendar.add(Calendar.YEAR, 3);
+        long to = this.time(0, 0);
+
+        long[] spent = index.getTimeSpent(from, to);
+
+        assertEquals("Spent size should be rule count", configuration.getRules().size(), spent.length);
+        for (int id = 0; id < spent.length; id++) {
+            assertEquals("Time spent should be equal to compiled rule", index.getRule(id).compile(this.timeZone).getTimeSpent(from, to), spent[id]);
+        }
+        long total = 0;
+        for (int id = 0; id < 4; id++) total += spent[id];
+        assertEquals("Default rules should cover whole range", to - from, total);
+    }
+
+    private long[] randomTimes(int size) {
+        Random random = new Random(42);
+        long from = this.time(0, 0);
+        long[] times = new long[size];
+        for (int i = 0; i < size; i++) times[i] = from + (long) (random.nextDouble() * 7 * TSCompiledRule.DAY_MILLIS);
+        return times;
+    }
+
+    private long[] countByDetect(TSRuleIndex index, long[] times) {
+        long[] counts = new long[index.getRuleCount()];
+        long[] bits = new long[index.getWords()];
+        for (long time: times) {
+            index.detect(time, bits, 0);
+            for (int id = 0; id < counts.length; id++) {
+                if ((bits[id >>> 6] & (1L << id)) != 0) counts[id]++;
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    public void count() throws Exception {
+        TSRuleIndex index = new TSRuleIndex(this.customConfiguration(), this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        long[] times = this.randomTimes(10000);
+
+        long[] counts = index.count(times);
+
+        assertArrayEquals("Counts should be equal to detected rules", this.countByDetect(index, times), counts);
+        assertEquals("Default rules should count every time once", times.length, counts[0] + counts[1] + counts[2] + counts[3]);
+    }
+
+    @Test
+    public void countInParallel() throws Exception {
+        TSRuleIndex index = new TSRuleIndex(this.customConfiguration(), this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        long[] times = this.randomTimes(TSRuleIndex.MIN_PARALLEL_COUNT * 4 + 3);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            assertArrayEquals("Parallel counts should be equal to counts", index.count(times), index.count(times, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void detectInParallel() throws Exception {
+        Random random = new Random(7);
+        TSConfiguration configuration = new TSConfiguration();
+        for (int i = 0; i < 8000; i++) {
+            long start = this.time(0, 0) + random.nextInt((int) TSCompiledRule.DAY_MILLIS / 1000) * 1000L;
+            long end = this.time(0, 0) + random.nextInt((int) TSCompiledRule.DAY_MILLIS / 1000) * 1000L;
+            configuration.addRule("RULE_" + i, new Date(start), new Date(end));
+        }
+        TSRuleIndex index = new TSRuleIndex(configuration, this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        assertNull("Rule set should be too large for segment bitsets", index.getTable().segmentBits);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            long[] expected = new long[index.getWords()];
+            long[] bits = new long[index.getWords() + 1];
+            for (long time: this.randomTimes(50)) {
+                index.detect(time, expected, 0);
+                index.detect(time, bits, 1, executor);
+                assertArrayEquals("Parallel bits should be equal to bits", expected, Arrays.copyOfRange(bits, 1, bits.length));
+                assertEquals("Rules should be equal to detected rules", index.detect(time), index.getRules(bits, 1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void detectFirst() throws Exception {
+        TSConfiguration configuration = this.customConfiguration();
+        TSRule custom = configuration.findRule("CUSTOM_RULE");
+        TSRuleIndex index = new TSRuleIndex(configuration, this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        assertEquals("First rule should be evening rule", TSRule.TS_RULE_NAME_EVENING, index.detectFirst(this.time(18, 0)).getName());
+        assertEquals("Equal priority should keep configuration order", TSRule.TS_RULE_NAME_AFTERNOON, index.detectFirst(this.time(16, 0)).getName());
+
+        configuration.updatePriority("CUSTOM_RULE", 1);
+
+        assertFalse("Index should be stale after priority change", index.isBuiltFrom(configuration));
+
+        index = new TSRuleIndex(configuration, this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        assertEquals("First rule should be custom rule", custom, index.detectFirst(this.time(18, 0)));
+        assertEquals("First rule should be morning rule", TSRule.TS_RULE_NAME_MORNING, index.detectFirst(this.time(9, 0)).getName());
+        assertNull("No rule should match", new TSRuleIndex(new TSConfiguration(), this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS).detectFirst(this.time(9, 0)));
+    }
+
+    @Test
+    public void detectFirstWithoutSegmentBits() throws Exception {
+        Random random = new Random(13);
+        TSConfiguration configuration = new TSConfiguration();
+        for (int i = 0; i < 8000; i++) {
+            long start = this.time(0, 0) + random.nextInt((int) TSCompiledRule.DAY_MILLIS / 1000) * 1000L;
+            long end = this.time(0, 0) + random.nextInt((int) TSCompiledRule.DAY_MILLIS / 1000) * 1000L;
+            TSRule rule = new TSRule("RULE_" + i, new Date(start), new Date(end));
+            rule.setPriority(random.nextInt(10));
+            configuration.addRule(rule);
+        }
+        TSRuleIndex index = new TSRuleIndex(configuration, this.timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        assertNull("Rule set should be too large for segment bitsets", index.getTable().segmentBits);
+
+        for (long time: this.randomTimes(50)) {
+            TSRule expected = null;
+            for (TSRule rule: index.detect(time)) {
+                if (expected == null || rule.getPriority() > expected.getPriority()) expected = rule;
+            }
+            assertEquals("First rule should be highest priority matching rule", expected, index.detectFirst(time));
+        }
+    }
+}
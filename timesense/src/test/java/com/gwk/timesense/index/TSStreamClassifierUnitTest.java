@@ -0,0 +1,102 @@
+package com.gwk.timesense.index;
+
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.listener.TSTransitionListener;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSStreamClassifier class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSStreamClassifierUnitTest {
+
+    private ArrayList<String> transitions;
+    private TSStreamClassifier classifier;
+    private Calendar calendar;
+
+    @Before
+    public void setUp() throws Exception {
+        this.transitions = new ArrayList<String>();
+        TSRuleIndex index = new TSRuleIndex(TSConfiguration.defaultConfiguration(), TimeZone.getDefault(), TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        this.classifier = new TSStreamClassifier(index, new TSTransitionListener() {
+            @Override
+            public void timeSenseEntered(TSRule rule, long time) {
+                transitions.add("+" + rule.getName());
+            }
+
+            @Override
+            public void timeSenseExited(TSRule rule, long time) {
+                transitions.add("-" + rule.getName());
+            }
+        });
+
+        this.calendar = Calendar.getInstance();
+        this.calendar.setTime(new Date());
+        this.calendar.set(Calendar.MINUTE, 30);
+        this.calendar.set(Calendar.SECOND, 0);
+        this.calendar.set(Calendar.MILLISECOND, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.transitions = null;
+        this.classifier = null;
+    }
+
+    private long hour(int hour) {
+        this.calendar.set(Calendar.HOUR_OF_DAY, hour);
+        return this.calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void accept() throws Exception {
+        this.classifier.accept(this.hour(2));
+        this.classifier.accept(this.hour(3));
+
+        assertEquals("Only first event should enter night rule", 1, this.transitions.size());
+        assertEquals("First event should enter night rule", "+" + TSRule.TS_RULE_NAME_NIGHT, this.transitions.get(0));
+        assertTrue("Night rule should be active", this.classifier.isActive(3));
+
+        this.classifier.accept(this.hour(9));
+
+        assertEquals("Transitions size should be three", 3, this.transitions.size());
+        assertEquals("Night rule should be exited", "-" + TSRule.TS_RULE_NAME_NIGHT, this.transitions.get(1));
+        assertEquals("Morning rule should be entered", "+" + TSRule.TS_RULE_NAME_MORNING, this.transitions.get(2));
+    }
+
+    @Test
+    public void acceptAcrossMidnight() throws Exception {
+        this.classifier.accept(this.hour(13));
+        this.calendar.add(Calendar.DATE, 1);
+        this.classifier.accept(this.hour(1));
+
+        assertEquals("Transitions size should be five", 5, this.transitions.size());
+        assertEquals("Afternoon rule should be exited", "-" + TSRule.TS_RULE_NAME_AFTERNOON, this.transitions.get(1));
+        assertEquals("Night rule should be entered", "+" + TSRule.TS_RULE_NAME_NIGHT, this.transitions.get(4));
+        assertTrue("Night rule should be active", this.classifier.isActive(3));
+        assertFalse("Evening rule should not be active", this.classifier.isActive(2));
+    }
+
+    @Test
+    public void acceptBackward() throws Exception {
+        this.classifier.accept(this.hour(13));
+        this.classifier.accept(this.hour(9));
+
+        assertEquals("Transitions size should be three", 3, this.transitions.size());
+        assertEquals("Afternoon rule should be exited", "-" + TSRule.TS_RULE_NAME_AFTERNOON, this.transitions.get(1));
+        assertEquals("Morning rule should be entered", "+" + TSRule.TS_RULE_NAME_MORNING, this.transitions.get(2));
+    }
+}
@@ -0,0 +1,153 @@
+package com.gwk.timesense.io;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.index.TSRuleIndex;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSConfigurationFile class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSConfigurationFileUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TSConfiguration configuration;
+    private Date morningDate;
+
+    @Before
+    public void setUp() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 9);
+        this.morningDate = calendar.getTime();
+
+        this.configuration = TSConfiguration.defaultConfiguration();
+        calendar.set(Calendar.HOUR_OF_DAY, 15);
+        Date start = calendar.getTime();
+        calendar.set(Calendar.HOUR_OF_DAY, 23);
+        this.configuration.addRule("CUSTOM_RULE_\u00e9", start, calendar.getTime());
+        this.configuration.findRule(TSRule.TS_RULE_NAME_MORNING).setAttribute("priority", "1");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.configuration = null;
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        File file = this.folder.newFile();
+        TSConfigurationFile.write(file, this.configuration);
+
+        TSConfigurationFile loaded = TSConfigurationFile.read(file);
+
+        assertNull("Index should not be stored", loaded.getIndex());
+        assertEquals("Rules size should be five", 5, loaded.getConfiguration().getRules().size());
+        for (int id = 0; id < 5; id++) {
+            assertEquals("Rule should be equal", this.configuration.getRules().get(id), loaded.getConfiguration().getRules().get(id));
+            assertEquals("Rule id should be position", id, loaded.getConfiguration().getRuleId(loaded.getConfiguration().getRules().get(id)));
+        }
+        assertEquals("Attribute should be stored", "1", loaded.getConfiguration().findRule(TSRule.TS_RULE_NAME_MORNING).getAttribute("priority"));
+    }
+
+    @Test
+    public void writeAndReadWithIndex() throws Exception {
+        File file = this.folder.newFile();
+        TimeZone timeZone = TimeZone.getDefault();
+        TSConfigurationFile.write(file, this.configuration, timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        TSConfigurationFile loaded = TSConfigurationFile.read(file);
+        TSRuleIndex index = loaded.getIndex();
+        TSRuleIndex built = new TSRuleIndex(loaded.getConfiguration(), timeZone, TSRuleIndex.DEFAULT_SLOT_MILLIS);
+
+        assertNotNull("Index should be stored", index);
+        assertTrue("Index should be built from loaded configuration", index.isBuiltFrom(loaded.getConfiguration()));
+        assertSame("Loaded table should be shared with equal table", index.getTable(), built.getTable());
+
+        TimeSense timeSense = new TimeSense();
+        timeSense.setConfiguration(loaded.getConfiguration(), index);
+
+        assertSame("Loaded index should be used", index, timeSense.getIndex());
+        assertEquals("Detected rule should be morning rule", TSRule.TS_RULE_NAME_MORNING, timeSense.detect(this.morningDate).get(0).getName());
+    }
+
+    @Test(expected = IOException.class)
+    public void readInvalidFile() throws Exception {
+        File file = this.folder.newFile();
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        output.close();
+
+        TSConfigurationFile.read(file);
+    }
+
+    @Test
+    public void readCorruptedFile() throws Exception {
+        File file = this.folder.newFile();
+        TSConfigurationFile.write(file, this.configuration, TimeZone.getDefault(), TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        byte[] data = Files.readAllBytes(file.toPath());
+
+        for (int position = 8; position < data.length; position++) {
+            byte[] corrupted = data.clone();
+            corrupted[position] ^= 0x40;
+            TSConfigurationFile loaded;
+            try {
+                loaded = TSConfigurationFile.read(ByteBuffer.wrap(corrupted));
+            } catch (IOException e) {
+                continue;
+            }
+            TSRuleIndex index = loaded.getIndex();
+            if (index == null) continue;
+            TSRuleIndex built = new TSRuleIndex(loaded.getConfiguration(), index.getTimeZone(), index.getSlotMillis());
+            assertSame("Loaded table should be equal to built table", built.getTable(), index.getTable());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readIndexWithHugeLength() throws Exception {
+        File ruleFile = this.folder.newFile();
+        TSConfigurationFile.write(ruleFile, this.configuration);
+        File file = this.folder.newFile();
+        TSConfigurationFile.write(file, this.configuration, TimeZone.getDefault(), TSRuleIndex.DEFAULT_SLOT_MILLIS);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        int tablePosition = (int) ruleFile.length();
+        int startOffsetsPosition = tablePosition + 4 + buffer.getInt(tablePosition) + 4;
+        buffer.putInt(startOffsetsPosition, Integer.MAX_VALUE);
+
+        TSConfigurationFile.read(buffer);
+    }
+
+    @Test(expected = IOException.class)
+    public void readNewerVersion() throws Exception {
+        File file = this.folder.newFile();
+        TSConfigurationFile.write(file, this.configuration);
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        access.seek(4);
+        access.writeInt(TSConfigurationFile.VERSION + 1);
+        access.close();
+
+        TSConfigurationFile.read(file);
+    }
+}
@@ -0,0 +1,150 @@
+package com.gwk.timesense.io;
+
+import com.gwk.timesense.TimeSense;
+import com.gwk.timesense.configuration.TSConfiguration;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSRuleFileLoader class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSRuleFileLoaderUnitTest {
+
+    private static final String RULES = "# name start end\n"
+            + "MORNING 04:00 11:00\n"
+            + "\n"
+            + "LUNCH_BREAK 12:00 13:00:30 priority=2 label=lunch\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeZone timeZone;
+    private Date morningDate;
+    private Date eveningDate;
+
+    @Before
+    public void setUp() throws Exception {
+        this.timeZone = TimeZone.getDefault();
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 9);
+        this.morningDate = calendar.getTime();
+        calendar.set(Calendar.HOUR_OF_DAY, 18);
+        this.eveningDate = calendar.getTime();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.timeZone = null;
+    }
+
+    private void write(File file, String content) throws Exception {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write(content);
+        writer.close();
+    }
+
+    @Test
+    public void parse() throws Exception {
+        TSConfiguration configuration = TSRuleFileLoader.parse(new StringReader(RULES), this.timeZone);
+
+        assertEquals("Rules size should be two", 2, configuration.getRules().size());
+        TSRule rule = configuration.findRule("LUNCH_BREAK");
+        Calendar calendar = Calendar.getInstance(this.timeZone);
+        calendar.setTime(rule.getEndTime());
+        assertEquals("End hour should be 13", 13, calendar.get(Calendar.HOUR_OF_DAY));
+        assertEquals("End second should be 30", 30, calendar.get(Calendar.SECOND));
+        assertEquals("Attribute should be read", "2", rule.getAttribute("priority"));
+        assertEquals("Attribute should be read", "lunch", rule.getAttribute("label"));
+        assertEquals("Priority should be read", 2, rule.getPriority());
+    }
+
+    @Test(expected = IOException.class)
+    public void parseInvalidPriority() throws Exception {
+        TSRuleFileLoader.parse(new StringReader("MORNING 04:00 11:00 priority=high\n"), this.timeZone);
+    }
+
+    @Test(expected = IOException.class)
+    public void parseInvalidTime() throws Exception {
+        TSRuleFileLoader.parse(new StringReader("MORNING 04:00 25:00\n"), this.timeZone);
+    }
+
+    @Test(expected = IOException.class)
+    public void parseMissingEndTime() throws Exception {
+        TSRuleFileLoader.parse(new StringReader("MORNING 04:00\n"), this.timeZone);
+    }
+
+    @Test
+    public void reloadIfChanged() throws Exception {
+        File file = this.folder.newFile();
+        this.write(file, RULES);
+        TimeSense timeSense = new TimeSense();
+        TSRuleFileLoader loader = new TSRuleFileLoader(file, timeSense);
+
+        assertTrue("File should be loaded", loader.reloadIfChanged());
+        assertFalse("Unchanged file should not be loaded", loader.reloadIfChanged());
+        assertEquals("Detected rule should be morning rule", "MORNING", timeSense.detect(this.morningDate).get(0).getName());
+        assertEquals("No rule should be detected", 0, timeSense.detect(this.eveningDate).size());
+
+        this.write(file, RULES + "EVENING 17:00 20:00\n");
+
+        assertTrue("Changed file should be loaded", loader.reloadIfChanged());
+        assertEquals("Detected rule should be evening rule", "EVENING", timeSense.detect(this.eveningDate).get(0).getName());
+        assertEquals("Reload count should be two", 2, loader.getReloadCount());
+    }
+
+    @Test
+    public void reloadIfChangedWithSameSizeAndTime() throws Exception {
+        File file = this.folder.newFile();
+        this.write(file, RULES);
+        TimeSense timeSense = new TimeSense();
+        TSRuleFileLoader loader = new TSRuleFileLoader(file, timeSense);
+        assertTrue("File should be loaded", loader.reloadIfChanged());
+        long modified = file.lastModified();
+
+        this.write(file, RULES.replace("MORNING 04:00", "MORNING 10:00"));
+        assertTrue("Modification time should be restored", file.setLastModified(modified));
+
+        assertTrue("Changed file of same size and time should be loaded", loader.reloadIfChanged());
+        assertEquals("No rule should be detected", 0, timeSense.detect(this.morningDate).size());
+
+        assertTrue("Modification time should be changed", file.setLastModified(modified + 60000));
+        assertFalse("Touched file with same content should not be loaded", loader.reloadIfChanged());
+        assertEquals("Reload count should be two", 2, loader.getReloadCount());
+    }
+
+    @Test
+    public void reloadInvalidFile() throws Exception {
+        File file = this.folder.newFile();
+        this.write(file, RULES);
+        TimeSense timeSense = new TimeSense();
+        TSRuleFileLoader loader = new TSRuleFileLoader(file, timeSense);
+        loader.reload();
+        TSConfiguration configuration = timeSense.getConfiguration();
+
+        this.write(file, "BROKEN\n");
+
+        assertFalse("Invalid file should not be loaded", loader.reload());
+        assertNotNull("Error should be kept", loader.getLastError());
+        assertSame("Previous configuration should be kept", configuration, timeSense.getConfiguration());
+    }
+}
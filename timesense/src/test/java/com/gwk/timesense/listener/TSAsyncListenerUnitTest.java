@@ -0,0 +1,239 @@
+package com.gwk.timesense.listener;
+
+import com.gwk.timesense.metrics.TSAtomicMetrics;
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/***
+ * Unit test for TSAsyncListener class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSAsyncListenerUnitTest {
+
+    private static final String RULE_NAME = "RULE_NAME";
+
+    @Mock
+    private TSListener listener;
+
+    @Mock
+    private TSTransitionListener transitionListener;
+
+    private ArrayList<Runnable> tasks;
+    private Executor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        this.tasks = new ArrayList<Runnable>();
+        this.executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.tasks = null;
+    }
+
+    private void runTasks() {
+        while (!this.tasks.isEmpty()) {
+            this.tasks.remove(0).run();
+        }
+    }
+
+    @Test
+    public void dispatchInOrder() throws Exception {
+        TSAsyncListener asyncListener = new TSAsyncListener(this.listener, this.executor, 4, TSOverflowPolicy.DROP_OLDEST);
+
+        asyncListener.timeSenseTriggered(RULE_NAME);
+        asyncListener.timeSenseTriggered();
+        verify(this.listener, never()).timeSenseTriggered(RULE_NAME);
+        assertEquals("Drain should be scheduled once", 1, this.tasks.size());
+        assertEquals("Pending count should be two", 2, asyncListener.getPendingCount());
+
+        this.runTasks();
+
+        InOrder inOrder = inOrder(this.listener);
+        inOrder.verify(this.listener).timeSenseTriggered(RULE_NAME);
+        inOrder.verify(this.listener).timeSenseTriggered();
+        assertEquals("Pending count should be zero", 0, asyncListener.getPendingCount());
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+        TSAsyncListener asyncListener = new TSAsyncListener(this.listener, this.executor, 2, TSOverflowPolicy.DROP_OLDEST);
+
+        asyncListener.timeSenseTriggered("A");
+        asyncListener.timeSenseTriggered("B");
+        asyncListener.timeSenseTriggered("C");
+        this.runTasks();
+
+        verify(this.listener, never()).timeSenseTriggered("A");
+        verify(this.listener).timeSenseTriggered("B");
+        verify(this.listener).timeSenseTriggered("C");
+        assertEquals("Dropped count should be one", 1, asyncListener.getDroppedCount());
+    }
+
+    @Test
+    public void coalesce() throws Exception {
+        TSAsyncListener asyncListener = new TSAsyncListener(this.transitionListener, this.executor, 2, TSOverflowPolicy.COALESCE);
+        TSRule first = TSRule.morning();
+        TSRule second = TSRule.night();
+
+        asyncListener.timeSenseEntered(first, 1L);
+        asyncListener.timeSenseEntered(second, 1L);
+        asyncListener.timeSenseExited(first, 2L);
+        this.runTasks();
+
+        verify(this.transitionListener, never()).timeSenseEntered(first, 1L);
+        verify(this.transitionListener).timeSenseExited(first, 2L);
+        verify(this.transitionListener).timeSenseEntered(second, 1L);
+        assertEquals("Dropped count should be one", 1, asyncListener.getDroppedCount());
+    }
+
+    @Test
+    public void coalesceKeepsOrder() throws Exception {
+        TSAsyncListener asyncListener = new TSAsyncListener(this.transitionListener, this.executor, 2, TSOverflowPolicy.COALESCE);
+        TSRule rule = TSRule.morning();
+
+        asyncListener.timeSenseEntered(rule, 1L);
+        asyncListener.timeSenseExited(rule, 2L);
+        asyncListener.timeSenseEntered(rule, 3L);
+        this.runTasks();
+
+        InOrder inOrder = inOrder(this.transitionListener);
+        inOrder.verify(this.transitionListener).timeSenseExited(rule, 2L);
+        inOrder.verify(this.transitionListener).timeSenseEntered(rule, 3L);
+        verify(this.transitionListener, never()).timeSenseEntered(rule, 1L);
+        assertEquals("Dropped count should be one", 1, asyncListener.getDroppedCount());
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        TSAtomicMetrics metrics = new TSAtomicMetrics();
+        TSAsyncListener asyncListener = new TSAsyncListener(this.listener, this.executor, 4, TSOverflowPolicy.DROP_OLDEST);
+        asyncListener.setMetrics(metrics);
+
+        asyncListener.timeSenseTriggered();
+        asyncListener.timeSenseTriggered(RULE_NAME);
+        assertEquals("Queued callbacks should not be measured", 0, metrics.getDispatchCount());
+        this.runTasks();
+
+        assertEquals("Listener latency count should be two", 2, metrics.getDispatchLatency(this.listener).getCount());
+        assertNull("Wrapper latency should be null", metrics.getDispatchLatency(asyncListener));
+    }
+
+    @Test
+    public void block() throws Exception {
+        ExecutorService service = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        TSListener slowListener = new TSListener() {
+            @Override
+            public void timeSenseTriggered() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void timeSenseTriggered(String ruleName) {
+                listener.timeSenseTriggered(ruleName);
+            }
+        };
+        final TSAsyncListener asyncListener = new TSAsyncListener(slowListener, service, 1, TSOverflowPolicy.BLOCK);
+
+        asyncListener.timeSenseTriggered();
+        while (asyncListener.getPendingCount() > 0) Thread.sleep(1);
+        asyncListener.timeSenseTriggered("A");
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                asyncListener.timeSenseTriggered("B");
+            }
+        });
+        producer.start();
+        producer.join(100);
+        assertTrue("Producer should wait for space", producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        service.shutdown();
+        assertTrue("Executor should finish", service.awaitTermination(5, TimeUnit.SECONDS));
+
+        verify(this.listener).timeSenseTriggered("A");
+        verify(this.listener).timeSenseTriggered("B");
+        assertEquals("Dropped count should be zero", 0, asyncListener.getDroppedCount());
+    }
+
+    @Test
+    public void blockFromOwnCallback() throws Exception {
+        Executor sameThread = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        final TSAsyncListener[] asyncListener = new TSAsyncListener[1];
+        TSListener reentrantListener = new TSListener() {
+            @Override
+            public void timeSenseTriggered() {
+                asyncListener[0].timeSenseTriggered("A");
+                asyncListener[0].timeSenseTriggered("B");
+            }
+
+            @Override
+            public void timeSenseTriggered(String ruleName) {
+                listener.timeSenseTriggered(ruleName);
+            }
+        };
+        asyncListener[0] = new TSAsyncListener(reentrantListener, sameThread, 1, TSOverflowPolicy.BLOCK);
+
+        asyncListener[0].timeSenseTriggered();
+
+        verify(this.listener, never()).timeSenseTriggered("A");
+        verify(this.listener).timeSenseTriggered("B");
+        assertEquals("Dropped count should be one", 1, asyncListener[0].getDroppedCount());
+    }
+
+    @Test
+    public void isolateFailure() throws Exception {
+        doThrow(new IllegalStateException()).when(this.listener).timeSenseTriggered("A");
+        TSAsyncListener asyncListener = new TSAsyncListener(this.listener, this.executor, 4, TSOverflowPolicy.DROP_OLDEST);
+
+        asyncListener.timeSenseTriggered("A");
+        asyncListener.timeSenseTriggered("B");
+        this.runTasks();
+
+        verify(this.listener).timeSenseTriggered("B");
+        assertEquals("Failed count should be one", 1, asyncListener.getFailedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorWithInvalidListener() throws Exception {
+        new TSAsyncListener(new Object(), this.executor, 4, TSOverflowPolicy.DROP_OLDEST);
+    }
+}
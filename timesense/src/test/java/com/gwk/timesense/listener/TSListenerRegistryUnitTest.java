@@ -0,0 +1,73 @@
+package com.gwk.timesense.listener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSListenerRegistry class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSListenerRegistryUnitTest {
+
+    private static final String RULE_NAME = "RULE_NAME";
+
+    @Mock
+    private TSListener listener;
+
+    @Mock
+    private TSTransitionListener transitionListener;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+    }
+
+    @Test
+    public void withListener() throws Exception {
+        TSListenerRegistry registry = TSListenerRegistry.EMPTY.withListener(this.listener).withListener(RULE_NAME, this.listener).withListener(this.transitionListener);
+
+        assertEquals("Generic listeners size should be one", 1, registry.getGenericListeners().length);
+        assertEquals("Specific listeners size should be one", 1, registry.getSpecificListeners(RULE_NAME).length);
+        assertEquals("Transition listeners size should be one", 1, registry.getTransitionListeners().length);
+        assertEquals("Empty registry should not change", 0, TSListenerRegistry.EMPTY.getGenericListeners().length);
+        assertNull("Empty registry should not change", TSListenerRegistry.EMPTY.getSpecificListeners(RULE_NAME));
+    }
+
+    @Test
+    public void withoutListener() throws Exception {
+        TSListenerRegistry registry = TSListenerRegistry.EMPTY.withListener(this.listener).withListener(RULE_NAME, this.listener);
+        TSListenerRegistry removed = registry.withoutListener(this.listener);
+
+        assertEquals("Generic listeners size should be zero", 0, removed.getGenericListeners().length);
+        assertEquals("Specific listeners size should be zero", 0, removed.getSpecificListeners(RULE_NAME).length);
+        assertEquals("Previous registry should not change", 1, registry.getGenericListeners().length);
+    }
+
+    @Test
+    public void contains() throws Exception {
+        TSListenerRegistry registry = TSListenerRegistry.EMPTY.withListener(RULE_NAME, this.listener).withListener(this.transitionListener);
+
+        assertTrue("Listener for rule name should be found", registry.contains(this.listener));
+        assertTrue("Transition listener should be found", registry.contains(this.transitionListener));
+        assertFalse("Removed listener should not be found", registry.withoutListener(RULE_NAME).contains(this.listener));
+    }
+
+    @Test
+    public void withoutListenerForRuleName() throws Exception {
+        TSListenerRegistry registry = TSListenerRegistry.EMPTY.withListener(RULE_NAME, this.listener).withListener(RULE_NAME, this.listener);
+
+        assertEquals("Specific listeners size should be one", 1, registry.withoutListener(RULE_NAME, this.listener).getSpecificListeners(RULE_NAME).length);
+        assertNull("Specific listeners should be removed", registry.withoutListener(RULE_NAME).getSpecificListeners(RULE_NAME));
+    }
+}
@@ -0,0 +1,64 @@
+package com.gwk.timesense.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSAtomicMetrics class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSAtomicMetricsUnitTest {
+
+    private TSAtomicMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        this.metrics = new TSAtomicMetrics(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.metrics = null;
+    }
+
+    @Test
+    public void detected() throws Exception {
+        this.metrics.detected(1, 100);
+        this.metrics.detected(10, 300);
+
+        assertEquals("Detection count should be eleven", 11, this.metrics.getDetectionCount());
+        assertEquals("Detection latency count should be two", 2, this.metrics.getDetectionLatency().getCount());
+        assertEquals("Detection latency max should be 300", 300, this.metrics.getDetectionLatency().getMax());
+    }
+
+    @Test
+    public void matched() throws Exception {
+        this.metrics.matched(1);
+        this.metrics.matched(1);
+        this.metrics.matched(5);
+
+        assertEquals("Match count should be three", 3, this.metrics.getMatchCount());
+        assertEquals("Rule match count should be two", 2, this.metrics.getMatchCount(1));
+        assertEquals("Rule outside capacity should be zero", 0, this.metrics.getMatchCount(5));
+    }
+
+    @Test
+    public void dispatched() throws Exception {
+        Object first = new Object();
+        Object second = new Object();
+        this.metrics.dispatched(first, 10);
+        this.metrics.dispatched(first, 20);
+        this.metrics.dispatched(second, 30);
+
+        assertEquals("Dispatch count should be three", 3, this.metrics.getDispatchCount());
+        assertEquals("Dispatch latency count should be three", 3, this.metrics.getDispatchLatency().getCount());
+        assertEquals("First listener latency count should be two", 2, this.metrics.getDispatchLatency(first).getCount());
+        assertEquals("Second listener latency sum should be 30", 30, this.metrics.getDispatchLatency(second).getSum());
+        assertNull("Unknown listener latency should be null", this.metrics.getDispatchLatency(new Object()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.gwk.timesense.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSHistogram class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSHistogramUnitTest {
+
+    private TSHistogram histogram;
+
+    @Before
+    public void setUp() throws Exception {
+        this.histogram = new TSHistogram();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.histogram = null;
+    }
+
+    @Test
+    public void record() throws Exception {
+        this.histogram.record(0);
+        this.histogram.record(1);
+        this.histogram.record(1000);
+
+        assertEquals("Count should be three", 3, this.histogram.getCount());
+        assertEquals("Sum should be 1001", 1001, this.histogram.getSum());
+        assertEquals("Max should be 1000", 1000, this.histogram.getMax());
+        assertEquals("Bucket 0 should hold 0", 1, this.histogram.getBucketCount(0));
+        assertEquals("Bucket 1 should hold 1", 1, this.histogram.getBucketCount(1));
+        assertEquals("Bucket 10 should hold 1000", 1, this.histogram.getBucketCount(10));
+    }
+
+    @Test
+    public void getPercentile() throws Exception {
+        assertEquals("Empty percentile should be zero", 0, this.histogram.getPercentile(50));
+
+        for (int i = 0; i < 99; i++) this.histogram.record(10);
+        this.histogram.record(5000);
+
+        assertEquals("Median should be upper bound of bucket", 15, this.histogram.getPercentile(50));
+        assertEquals("Max percentile should be max", 5000, this.histogram.getPercentile(100));
+    }
+
+    @Test
+    public void recordConcurrently() throws Exception {
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final long value = i + 1;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) histogram.record(value);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread: threads) thread.join();
+
+        assertEquals("Count should be 40000", 40000, this.histogram.getCount());
+        assertEquals("Sum should be 100000", 100000, this.histogram.getSum());
+        assertEquals("Max should be 4", 4, this.histogram.getMax());
+    }
+}
@@ -0,0 +1,184 @@
+package com.gwk.timesense.publisher;
+
+import com.gwk.timesense.rule.TSRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSEventPublisher class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSEventPublisherUnitTest {
+
+    /***
+     * Subscriber recording every signal.
+     */
+    private static class RecordingSubscriber implements TSSubscriber<TSEvent> {
+        private TSSubscription subscription;
+        private ArrayList<TSEvent> events = new ArrayList<TSEvent>();
+        private Throwable error;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(TSSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(TSEvent item) {
+            this.events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed = true;
+        }
+    }
+
+    private TSEventPublisher publisher;
+    private TSRule morning;
+    private TSRule night;
+
+    @Before
+    public void setUp() throws Exception {
+        this.publisher = new TSEventPublisher();
+        this.morning = TSRule.morning();
+        this.night = TSRule.night();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.publisher = null;
+    }
+
+    @Test
+    public void request() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        this.publisher.subscribe(subscriber);
+
+        this.publisher.timeSenseExited(this.night, 1L);
+        assertEquals("No event should be delivered without demand", 0, subscriber.events.size());
+
+        subscriber.subscription.request(1);
+        assertEquals("Buffered event should be delivered", 1, subscriber.events.size());
+
+        this.publisher.timeSenseEntered(this.morning, 2L);
+        this.publisher.timeSenseTriggered();
+        subscriber.subscription.request(5);
+        this.publisher.timeSenseExited(this.morning, 3L);
+
+        assertEquals("Events size should be four", 4, subscriber.events.size());
+        assertEquals("Event should be entered", TSEvent.Type.ENTERED, subscriber.events.get(1).getType());
+        assertEquals("Event should be triggered", TSEvent.Type.TRIGGERED, subscriber.events.get(2).getType());
+        assertSame("Event rule should be morning", this.morning, subscriber.events.get(3).getRule());
+    }
+
+    @Test
+    public void coalesce() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        this.publisher.subscribe(subscriber);
+
+        for (long time = 0; time < 1000; time++) {
+            this.publisher.timeSenseEntered(this.morning, time);
+            this.publisher.timeSenseExited(this.morning, time);
+            this.publisher.timeSenseTriggered();
+        }
+        this.publisher.timeSenseEntered(this.night, 1000L);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals("Events size should be three", 3, subscriber.events.size());
+        assertEquals("Latest morning state should win", TSEvent.Type.EXITED, subscriber.events.get(0).getType());
+        assertEquals("Latest morning time should win", 999L, subscriber.events.get(0).getTime());
+        assertSame("Night event should be last", this.night, subscriber.events.get(2).getRule());
+    }
+
+    @Test
+    public void independentSubscribers() throws Exception {
+        RecordingSubscriber fast = new RecordingSubscriber();
+        RecordingSubscriber slow = new RecordingSubscriber();
+        this.publisher.subscribe(fast);
+        this.publisher.subscribe(slow);
+        fast.subscription.request(Long.MAX_VALUE);
+
+        this.publisher.timeSenseEntered(this.morning, 1L);
+        this.publisher.timeSenseExited(this.morning, 2L);
+
+        assertEquals("Fast subscriber should get every event", 2, fast.events.size());
+        assertEquals("Slow subscriber should get nothing yet", 0, slow.events.size());
+
+        slow.subscription.request(1);
+        assertEquals("Slow subscriber should get latest state", TSEvent.Type.EXITED, slow.events.get(0).getType());
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        this.publisher.subscribe(subscriber);
+        subscriber.subscription.request(10);
+        subscriber.subscription.cancel();
+
+        this.publisher.timeSenseEntered(this.morning, 1L);
+
+        assertEquals("Cancelled subscriber should get nothing", 0, subscriber.events.size());
+        assertEquals("Subscriber count should be zero", 0, this.publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void close() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        this.publisher.subscribe(subscriber);
+        this.publisher.timeSenseEntered(this.morning, 1L);
+
+        this.publisher.close();
+        assertFalse("Buffered event should be delivered before completion", subscriber.completed);
+
+        subscriber.subscription.request(1);
+        assertEquals("Buffered event should be delivered", 1, subscriber.events.size());
+        assertTrue("Subscriber should be completed", subscriber.completed);
+    }
+
+    @Test
+    public void requestInvalid() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        this.publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertTrue("Error should be illegal argument", subscriber.error instanceof IllegalArgumentException);
+        assertEquals("Subscriber count should be zero", 0, this.publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void failingSubscriber() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(TSEvent item) {
+                throw new IllegalStateException();
+            }
+        };
+        RecordingSubscriber other = new RecordingSubscriber();
+        this.publisher.subscribe(subscriber);
+        this.publisher.subscribe(other);
+        subscriber.subscription.request(10);
+        other.subscription.request(10);
+
+        this.publisher.timeSenseEntered(this.morning, 1L);
+        this.publisher.timeSenseExited(this.morning, 2L);
+
+        assertEquals("Failing subscriber should be removed", 1, this.publisher.getSubscriberCount());
+        assertEquals("Other subscriber should get every event", 2, other.events.size());
+    }
+}
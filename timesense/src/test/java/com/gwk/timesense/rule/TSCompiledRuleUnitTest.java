@@ -0,0 +1,139 @@
+package com.gwk.timesense.rule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSCompiledRule class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSCompiledRuleUnitTest {
+
+    private TimeZone timeZone;
+    private Calendar calendar;
+
+    @Before
+    public void setUp() throws Exception {
+        this.timeZone = TimeZone.getDefault();
+        this.calendar = Calendar.getInstance();
+        this.calendar.setTime(new Date());
+        this.calendar.set(Calendar.MINUTE, 0);
+        this.calendar.set(Calendar.SECOND, 0);
+        this.calendar.set(Calendar.MILLISECOND, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.calendar = null;
+    }
+
+    private long hour(int hour) {
+        this.calendar.set(Calendar.HOUR_OF_DAY, hour);
+        return this.calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void offsets() throws Exception {
+        TSCompiledRule rule = new TSCompiledRule(new TSRule("RULE_NAME", new Date(this.hour(4)), new Date(this.hour(11))), this.timeZone);
+
+        assertEquals("Start offset should be 04:00", 4 * 60 * 60 * 1000, rule.getStartOffset());
+        assertEquals("End offset should be 11:00", 11 * 60 * 60 * 1000, rule.getEndOffset());
+        assertFalse("Rule should not be overnight", rule.isOvernight());
+    }
+
+    @Test
+    public void isMatch() throws Exception {
+        TSCompiledRule rule = new TSCompiledRule(new TSRule("RULE_NAME", new Date(this.hour(4)), new Date(this.hour(11))), this.timeZone);
+
+        assertTrue("Start time should be matched", rule.isMatch(this.hour(4)));
+        assertTrue("Time should be matched", rule.isMatch(this.hour(9)));
+        assertFalse("End time should not be matched", rule.isMatch(this.hour(11)));
+        assertFalse("Time should not be matched", rule.isMatch(this.hour(2)));
+    }
+
+    @Test
+    public void isMatchOvernight() throws Exception {
+        TSCompiledRule rule = TSRule.night().compile(this.timeZone);
+
+        assertTrue("Rule should be overnight", rule.isOvernight());
+        assertTrue("Time before midnight should be matched", rule.isMatch(this.hour(23)));
+        assertTrue("Time after midnight should be matched", rule.isMatch(this.hour(2)));
+        assertFalse("Time should not be matched", rule.isMatch(this.hour(9)));
+    }
+
+    @Test
+    public void compileReuse() throws Exception {
+        TSRule rule = TSRule.morning();
+        TSCompiledRule compiled = rule.compile(this.timeZone);
+
+        assertSame("Compiled rule should be reused", compiled, rule.compile(this.timeZone));
+
+        rule.setEndTime(new Date(this.hour(12)));
+
+        assertNotSame("Compiled rule should be rebuilt", compiled, rule.compile(this.timeZone));
+        assertTrue("Time should be matched", rule.compile(this.timeZone).isMatch(this.hour(11)));
+    }
+
+    @Test
+    public void compileReuseWithEqualZone() throws Exception {
+        TSRule rule = TSRule.morning();
+        TSCompiledRule compiled = rule.compile(TimeZone.getDefault());
+
+        assertSame("Compiled rule should be reused for equal zone", compiled, rule.compile(TimeZone.getDefault()));
+        assertSame("Compiled rule should be reused for zone with same id", compiled, rule.compile(TimeZone.getTimeZone(TimeZone.getDefault().getID())));
+        assertNotSame("Compiled rule should be rebuilt for other zone", compiled, rule.compile(new SimpleTimeZone(TimeZone.getDefault().getRawOffset() + 3600000, "OTHER")));
+    }
+
+    @Test
+    public void timeOfDay() throws Exception {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+
+        assertEquals("Time of day should be zero", 0, TSCompiledRule.timeOfDay(0, utc));
+        assertEquals("Time of day should wrap before epoch", TSCompiledRule.DAY_MILLIS - 1, TSCompiledRule.timeOfDay(-1, utc));
+    }
+
+    @Test
+    public void spentBefore() throws Exception {
+        int start = 22 * 60 * 60 * 1000;
+        int end = 4 * 60 * 60 * 1000;
+
+        assertEquals("One day should be six hours", 6 * 60 * 60 * 1000L, TSCompiledRule.spentBefore(start, end, TSCompiledRule.DAY_MILLIS));
+        assertEquals("Before midnight should be four hours", 4 * 60 * 60 * 1000L, TSCompiledRule.spentBefore(start, end, 4 * 60 * 60 * 1000L));
+        assertEquals("Day before epoch should be negative", -6 * 60 * 60 * 1000L, TSCompiledRule.spentBefore(start, end, -TSCompiledRule.DAY_MILLIS));
+    }
+
+    @Test
+    public void getTimeSpent() throws Exception {
+        TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(2017, Calendar.MARCH, 1, 22, 0, 0);
+        Date start = calendar.getTime();
+        calendar.set(Calendar.HOUR_OF_DAY, 4);
+        Date end = calendar.getTime();
+        TSCompiledRule night = new TSCompiledRule(new TSRule("NIGHT", start, end), timeZone);
+
+        calendar.set(2017, Calendar.FEBRUARY, 20, 13, 17, 0);
+        long from = calendar.getTimeInMillis();
+        calendar.set(2017, Calendar.MARCH, 20, 2, 43, 0);
+        long to = calendar.getTimeInMillis();
+
+        long sampled = 0;
+        for (long time = from; time < to; time += 60 * 1000) {
+            if (night.isMatch(time)) sampled += 60 * 1000;
+        }
+
+        assertEquals("Time spent should be equal to sampling across daylight saving change", sampled, night.getTimeSpent(from, to));
+        assertEquals("Empty range should be zero", 0, night.getTimeSpent(to, from));
+    }
+}
@@ -0,0 +1,53 @@
+package com.gwk.timesense.rule;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/***
+ * Unit test for TSPeriod class.
+ *
+ * @author Anselmus KA Kurniawan
+ * @version 0.1
+ */
+public class TSPeriodUnitTest {
+
+    @Test
+    public void of() throws Exception {
+        assertEquals("Period should be night", TSPeriod.NIGHT, TSPeriod.of(0));
+        assertEquals("Period should be morning", TSPeriod.MORNING, TSPeriod.of(4 * 60 * 60 * 1000));
+        assertEquals("Period should be morning", TSPeriod.MORNING, TSPeriod.of(11 * 60 * 60 * 1000 - 1));
+        assertEquals("Period should be afternoon", TSPeriod.AFTERNOON, TSPeriod.of(11 * 60 * 60 * 1000));
+        assertEquals("Period should be evening", TSPeriod.EVENING, TSPeriod.of(17 * 60 * 60 * 1000));
+        assertEquals("Period should be night", TSPeriod.NIGHT, TSPeriod.of(21 * 60 * 60 * 1000));
+        assertEquals("Period should be night", TSPeriod.NIGHT, TSPeriod.of((int) TSCompiledRule.DAY_MILLIS - 1));
+    }
+
+    @Test
+    public void ofMatchesDefaultRules() throws Exception {
+        TimeZone timeZone = TimeZone.getDefault();
+        TSCompiledRule[] rules = {
+                TSRule.morning().compile(timeZone), TSRule.afternoon().compile(timeZone),
+                TSRule.evening().compile(timeZone), TSRule.night().compile(timeZone)
+        };
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            int timeOfDay = TSCompiledRule.timeOfDay(calendar.getTimeInMillis(), timeZone);
+            TSPeriod period = TSPeriod.of(timeOfDay);
+            for (TSCompiledRule rule: rules) {
+                assertEquals("Period should match default rule at " + new Date(calendar.getTimeInMillis()),
+                        rule.getRule().getName().equals(period.getRuleName()), rule.contains(timeOfDay));
+            }
+            calendar.add(Calendar.MINUTE, 1);
+        }
+    }
+}
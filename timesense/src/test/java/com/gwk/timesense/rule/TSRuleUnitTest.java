@@ -68,6 +68,54 @@ public class TSRuleUnitTest {
         assertEqualDates(end, rule.getEndTime());
     }
 
+    @Test
+    public void attribute() throws Exception {
+        TSRule rule = TSRule.morning();
+
+        assertNull("Attribute should not be set", rule.getAttribute("priority"));
+
+        rule.setAttribute("priority", "1");
+        assertEquals("Attribute should be set", "1", rule.getAttribute("priority"));
+        assertEquals("Attributes size should be one", 1, rule.getAttributes().size());
+
+        rule.setAttribute("priority", null);
+        assertNull("Attribute should be removed", rule.getAttribute("priority"));
+    }
+
+    @Test
+    public void priority() throws Exception {
+        TSRule rule = TSRule.morning();
+
+        assertEquals("Priority should be zero", 0, rule.getPriority());
+
+        rule.setPriority(-3);
+        assertEquals("Priority should be set", -3, rule.getPriority());
+        assertEquals("Priority should be kept as attribute", "-3", rule.getAttribute(TSRule.ATTRIBUTE_PRIORITY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPriority() throws Exception {
+        TSRule.morning().setAttribute(TSRule.ATTRIBUTE_PRIORITY, "high");
+    }
+
+    @Test
+    public void freeze() throws Exception {
+        TSRule rule = TSRule.morning();
+        rule.freeze();
+
+        assertTrue("Rule should be frozen", rule.isFrozen());
+        rule.getStartTime().setTime(0);
+        assertEquals("Rule should not change", TSRule.morning(), rule);
+        assertFalse("Copy should not be frozen", new TSRule(rule).isFrozen());
+
+        try {
+            rule.setName("RULE_NAME");
+            fail("Frozen rule should not change");
+        } catch (UnsupportedOperationException e) {
+            assertEquals("Name should not change", TSRule.TS_RULE_NAME_MORNING, rule.getName());
+        }
+    }
+
     @Test
     public void morning() throws Exception {
         this.calendar.set(Calendar.HOUR_OF_DAY, 4);
@@ -234,4 +282,13 @@ public class TSRuleUnitTest {
         assertFalse("Rules should not be equal", morning.equals(night));
     }
 
+    @Test
+    public void hashCodeEquals() throws Exception {
+        TSRule morning1 = TSRule.morning();
+        TSRule morning2 = TSRule.morning();
+
+        assertTrue("Rules should be equal", morning1.equals(morning2));
+        assertEquals("Hash code of equal rules should be equal", morning1.hashCode(), morning2.hashCode());
+    }
+
 }
\ No newline at end of file